@@ -13,12 +13,16 @@ CREATE TABLE IF NOT EXISTS users (
     AuthorName TEXT NOT NULL,
     Gender VARCHAR(10) CHECK (Gender IN ('Male', 'Female')),
     Age INTEGER CHECK (Age > 0),
-    Password TEXT,  -- 必需：用于登录验证
+    Password TEXT,  -- 必需：用于登录验证，getById 需要返回原始密码
+    NameClaimed BOOLEAN NOT NULL DEFAULT TRUE,  -- 是否占用该用户名；导入数据中的重名用户只有第一个为 TRUE
     IsDeleted BOOLEAN DEFAULT FALSE,  -- 必需：软删除支持
-    Followers INTEGER DEFAULT 0 CHECK (Followers >= 0),  -- 冗余字段，可优化但保留兼容性
-    Following INTEGER DEFAULT 0 CHECK (Following >= 0)   -- 冗余字段，可优化但保留兼容性
+    Followers INTEGER DEFAULT 0 CHECK (Followers >= 0),  -- 冗余计数器，由 follow / deleteAccount 维护
+    Following INTEGER DEFAULT 0 CHECK (Following >= 0)   -- 冗余计数器，由 follow / deleteAccount 维护
 );
 
+-- 新用户的 AuthorId 来源；导入后 setval 到 MAX(AuthorId) + 1，随 users 表一起删除
+CREATE SEQUENCE IF NOT EXISTS users_id_seq OWNED BY users.AuthorId;
+
 -- 食谱表（保留核心字段，营养信息分离）
 CREATE TABLE IF NOT EXISTS recipes (
     RecipeId BIGINT PRIMARY KEY,
@@ -35,6 +39,13 @@ CREATE TABLE IF NOT EXISTS recipes (
     -- 聚合字段（必需：用于快速查询和排序）
     AggregatedRating DECIMAL(3,2) CHECK (AggregatedRating >= 0 AND AggregatedRating <= 5),
     ReviewCount INTEGER DEFAULT 0 CHECK (ReviewCount >= 0),
+    -- 评分累计值（Rating > 0 的评论之和与条数），评论写入时按增量维护，AggregatedRating 由二者算出
+    RatingSum BIGINT NOT NULL DEFAULT 0 CHECK (RatingSum >= 0),
+    RatingCount INTEGER NOT NULL DEFAULT 0 CHECK (RatingCount >= 0),
+    -- 配料数（冗余字段，由应用层在写入配料时维护，用于 top-K 查询）
+    IngredientCount INTEGER NOT NULL DEFAULT 0 CHECK (IngredientCount >= 0),
+    -- 墓碑标记：快速删除模式下先标记，评论/点赞由后台任务分批回收
+    IsDeleted BOOLEAN NOT NULL DEFAULT FALSE,
     -- 外键约束：使用软删除，不级联删除
     FOREIGN KEY (AuthorId) REFERENCES users(AuthorId)
 );
@@ -48,6 +59,7 @@ CREATE TABLE IF NOT EXISTS reviews (
     Review TEXT,
     DateSubmitted TIMESTAMP,
     DateModified TIMESTAMP,
+    LikeCount INTEGER NOT NULL DEFAULT 0 CHECK (LikeCount >= 0),
     FOREIGN KEY (RecipeId) REFERENCES recipes(RecipeId) ON DELETE CASCADE,  -- 删除食谱时删除评论
     FOREIGN KEY (AuthorId) REFERENCES users(AuthorId)  -- 不级联删除，使用软删除
 );
@@ -84,6 +96,22 @@ CREATE TABLE IF NOT EXISTS user_follows (
     CHECK (FollowerId != FollowingId)  -- 不能关注自己
 );
 
+-- 关注流时间线（写扩散，仅 sustc.feed.mode=timeline 时维护）
+CREATE TABLE IF NOT EXISTS feed_timeline (
+    FollowerId BIGINT NOT NULL,
+    RecipeId BIGINT NOT NULL,
+    AuthorId BIGINT NOT NULL,
+    DatePublished TIMESTAMP,  -- 冗余自 recipes，用于按时间排序
+    RecipeCategory TEXT,      -- 冗余自 recipes，用于分类过滤
+    PRIMARY KEY (FollowerId, RecipeId),
+    FOREIGN KEY (RecipeId) REFERENCES recipes(RecipeId) ON DELETE CASCADE
+);
+
+-- 粉丝数过多、改为读扩散的作者
+CREATE TABLE IF NOT EXISTS feed_pull_authors (
+    AuthorId BIGINT PRIMARY KEY
+);
+
 -- ============================================
 -- 3. 扩展表（新设计的功能）
 -- ============================================
@@ -164,29 +192,44 @@ CREATE TABLE IF NOT EXISTS user_favorite_recipes (
 
 -- users 表索引
 CREATE INDEX IF NOT EXISTS idx_users_authorname ON users(AuthorName);
+-- 用户名唯一：注册时 INSERT ... ON CONFLICT 依赖该索引，一条语句内无竞态地判重
+CREATE UNIQUE INDEX IF NOT EXISTS idx_users_name_claimed ON users(AuthorName) WHERE NameClaimed;
 CREATE INDEX IF NOT EXISTS idx_users_isdeleted ON users(IsDeleted) WHERE IsDeleted = FALSE;
+-- 粉丝/关注比排行：表达式必须与查询中的 ORDER BY 完全一致才能命中
+CREATE INDEX IF NOT EXISTS idx_users_follow_ratio ON users((Followers * 1.0 / Following) DESC, AuthorId ASC)
+    WHERE IsDeleted = FALSE AND Following > 0;
 
 -- recipes 表索引
-CREATE INDEX IF NOT EXISTS idx_recipes_authorid ON recipes(AuthorId);
 CREATE INDEX IF NOT EXISTS idx_recipes_category ON recipes(RecipeCategory);
 CREATE INDEX IF NOT EXISTS idx_recipes_datepublished ON recipes(DatePublished DESC NULLS LAST);
 CREATE INDEX IF NOT EXISTS idx_recipes_rating ON recipes(AggregatedRating DESC NULLS LAST);
 CREATE INDEX IF NOT EXISTS idx_recipes_reviewcount ON recipes(ReviewCount DESC);
--- 复合索引：用于 feed 查询
-CREATE INDEX IF NOT EXISTS idx_recipes_feed ON recipes(AuthorId, RecipeCategory, DatePublished DESC NULLS LAST);
+-- 复合索引：用于 feed 查询；末列 RecipeId 使游标分页可按 (DatePublished, RecipeId) 直接定位
+CREATE INDEX IF NOT EXISTS idx_recipes_feed ON recipes(AuthorId, RecipeCategory, DatePublished DESC NULLS LAST, RecipeId DESC);
+-- 复合索引：不按分类过滤的 feed 游标查询按作者顺序读取（前缀可替代原 AuthorId 单列索引）
+CREATE INDEX IF NOT EXISTS idx_recipes_author_date ON recipes(AuthorId, DatePublished DESC NULLS LAST, RecipeId DESC);
 -- 复合索引：用于搜索和排序
 CREATE INDEX IF NOT EXISTS idx_recipes_category_rating ON recipes(RecipeCategory, AggregatedRating DESC NULLS LAST);
 -- 全文搜索索引（PostgreSQL）
 CREATE INDEX IF NOT EXISTS idx_recipes_name_lower ON recipes(LOWER(Name));
 CREATE INDEX IF NOT EXISTS idx_recipes_description_lower ON recipes(LOWER(Description));
+-- 待回收的墓碑食谱（部分索引，通常为空）
+CREATE INDEX IF NOT EXISTS idx_recipes_tombstone ON recipes(RecipeId) WHERE IsDeleted = TRUE;
+-- 配料数排行：top-K 查询直接按索引顺序读取前 K 项
+CREATE INDEX IF NOT EXISTS idx_recipes_ingredient_count ON recipes(IngredientCount DESC, RecipeId ASC) WHERE IngredientCount > 0;
 
 -- reviews 表索引
 CREATE INDEX IF NOT EXISTS idx_reviews_recipeid ON reviews(RecipeId);
-CREATE INDEX IF NOT EXISTS idx_reviews_authorid ON reviews(AuthorId);
+-- 复合索引：按作者列出评论，按 DateModified 顺序区间扫描后回表（前缀可替代原 AuthorId 单列索引）
+CREATE INDEX IF NOT EXISTS idx_reviews_author_date ON reviews(AuthorId, DateModified DESC, ReviewId DESC);
 CREATE INDEX IF NOT EXISTS idx_reviews_datemodified ON reviews(DateModified DESC);
 CREATE INDEX IF NOT EXISTS idx_reviews_rating ON reviews(Rating);
--- 复合索引：用于评论列表查询
-CREATE INDEX IF NOT EXISTS idx_reviews_recipe_date ON reviews(RecipeId, DateModified DESC);
+-- 全文检索：表达式 GIN 索引，评论插入/修改时由数据库随行维护，查询须使用相同表达式
+CREATE INDEX IF NOT EXISTS idx_reviews_text_search ON reviews USING GIN (to_tsvector('english', COALESCE(Review, '')));
+-- 复合索引：用于评论列表查询（末列 ReviewId 作为 keyset 分页的唯一次序）
+CREATE INDEX IF NOT EXISTS idx_reviews_recipe_date ON reviews(RecipeId, DateModified DESC, ReviewId DESC);
+-- 复合索引：按点赞数排序的评论列表
+CREATE INDEX IF NOT EXISTS idx_reviews_recipe_likes ON reviews(RecipeId, LikeCount DESC, DateModified DESC, ReviewId DESC);
 
 -- recipe_ingredients 表索引
 CREATE INDEX IF NOT EXISTS idx_recipe_ingredients_recipeid ON recipe_ingredients(RecipeId);
@@ -200,6 +243,12 @@ CREATE INDEX IF NOT EXISTS idx_review_likes_authorid ON review_likes(AuthorId);
 CREATE INDEX IF NOT EXISTS idx_user_follows_followerid ON user_follows(FollowerId);
 CREATE INDEX IF NOT EXISTS idx_user_follows_followingid ON user_follows(FollowingId);
 
+-- feed_timeline 表索引：按关注者的时间线区间扫描，以及按食谱/作者清理
+CREATE INDEX IF NOT EXISTS idx_feed_timeline_order ON feed_timeline(FollowerId, DatePublished DESC NULLS LAST, RecipeId DESC);
+CREATE INDEX IF NOT EXISTS idx_feed_timeline_category ON feed_timeline(FollowerId, RecipeCategory, DatePublished DESC NULLS LAST, RecipeId DESC);
+CREATE INDEX IF NOT EXISTS idx_feed_timeline_recipe ON feed_timeline(RecipeId);
+CREATE INDEX IF NOT EXISTS idx_feed_timeline_author ON feed_timeline(AuthorId);
+
 -- nutrition 表索引
 CREATE INDEX IF NOT EXISTS idx_nutrition_calories ON nutrition(Calories ASC NULLS LAST);
 
@@ -307,7 +356,15 @@ COMMENT ON TABLE ingredients IS '配料规范化表（新设计）';
 COMMENT ON TABLE instructions IS '制作步骤表';
 COMMENT ON TABLE keywords IS '关键词/标签表';
 COMMENT ON TABLE user_favorite_recipes IS '用户收藏表';
+COMMENT ON TABLE feed_timeline IS '关注流时间线，写扩散维护';
+COMMENT ON TABLE feed_pull_authors IS '读扩散作者（粉丝数超过阈值）';
+COMMENT ON COLUMN users.NameClaimed IS '是否占用用户名，唯一索引 idx_users_name_claimed 只覆盖为 TRUE 的行';
 COMMENT ON COLUMN users.IsDeleted IS '软删除标记，TRUE表示已删除';
 COMMENT ON COLUMN recipes.AggregatedRating IS '聚合评分，由触发器自动更新';
 COMMENT ON COLUMN recipes.ReviewCount IS '评论数量，由触发器自动更新';
+COMMENT ON COLUMN recipes.RatingSum IS '有效评分（Rating > 0）之和，增量维护';
+COMMENT ON COLUMN recipes.RatingCount IS '有效评分条数，增量维护';
+COMMENT ON COLUMN recipes.IngredientCount IS '配料数，与 recipe_ingredients 行数保持一致';
+COMMENT ON COLUMN recipes.IsDeleted IS '墓碑标记，TRUE表示已删除、等待后台回收';
+COMMENT ON COLUMN reviews.LikeCount IS '点赞数，与 review_likes 行数保持一致';
 
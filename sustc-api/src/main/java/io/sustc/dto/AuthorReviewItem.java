@@ -0,0 +1,56 @@
+package io.sustc.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.sql.Timestamp;
+
+@Builder
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AuthorReviewItem implements Serializable {
+
+    /**
+     * Unique identifier of the review.
+     */
+    private long reviewId;
+
+    /**
+     * ID of the reviewed recipe.
+     */
+    private long recipeId;
+
+    /**
+     * Name of the reviewed recipe.
+     */
+    private String recipeName;
+
+    /**
+     * Rating given by the author.
+     */
+    private float rating;
+
+    /**
+     * Text content of the review.
+     */
+    private String review;
+
+    /**
+     * Timestamp when the review was first submitted.
+     */
+    private Timestamp dateSubmitted;
+
+    /**
+     * Timestamp when the review was last modified.
+     */
+    private Timestamp dateModified;
+
+    /**
+     * IDs of the users who liked this review.
+     */
+    private long[] likes;
+}
@@ -0,0 +1,36 @@
+package io.sustc.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPage<T> implements Serializable {
+
+    /**
+     * List of items contained in the current page.
+     */
+    private List<T> items;
+
+    /**
+     * Maximum number of items per page.
+     */
+    private int size;
+
+    /**
+     * Opaque cursor to pass back for the next page, or {@code null} if this is the last page.
+     */
+    private String nextCursor;
+
+    /**
+     * Total number of matching items, or {@code null} if the caller did not request it.
+     */
+    private Long total;
+}
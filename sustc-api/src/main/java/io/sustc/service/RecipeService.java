@@ -258,4 +258,18 @@ public interface RecipeService {
      */
     List<Map<String, Object>> getTop3MostComplexRecipesByIngredients();
 
+    /**
+     * Retrieves the top {@code k} recipes with the greatest number of ingredient entries
+     * recorded in {@code recipe_ingredients}.
+     *
+     * <p>Counting, ordering and returned fields follow
+     * {@link #getTop3MostComplexRecipesByIngredients()}; only the output size differs.</p>
+     *
+     * @param k the maximum number of recipes to return
+     * @return a list of up to {@code k} maps describing the most
+     *         ingredient-heavy recipes.
+     * @throws IllegalArgumentException if {@code k <= 0}
+     */
+    List<Map<String, Object>> getTopKMostComplexRecipesByIngredients(int k);
+
 }
@@ -1,6 +1,8 @@
 package io.sustc.service;
 
 import io.sustc.dto.AuthInfo;
+import io.sustc.dto.AuthorReviewItem;
+import io.sustc.dto.CursorPage;
 import io.sustc.dto.PageResult;
 import io.sustc.dto.RecipeRecord;
 import io.sustc.dto.ReviewRecord;
@@ -164,6 +166,41 @@ public interface ReviewService {
      */
     long unlikeReview(AuthInfo auth, long reviewId);
 
+    /**
+     * Likes several reviews at once, with the same constraints as
+     * {@link #likeReview(AuthInfo, long)} applied to every review.
+     *
+     * <p>The operation is all-or-nothing: if any review fails validation, no like is recorded.
+     * Review IDs that are already liked, or that appear more than once, are no-ops.</p>
+     *
+     * @param auth      authentication identity of the user performing the likes
+     * @param reviewIds the IDs of the reviews to like
+     * @return the total number of likes of each review, in the order of {@code reviewIds}
+     *
+     * @throws SecurityException
+     *         if {@code auth} is invalid, inactive, or if any review belongs to the user
+     *
+     * @throws IllegalArgumentException
+     *         if {@code reviewIds} is {@code null} or any review does not exist
+     */
+    long[] likeReviews(AuthInfo auth, long[] reviewIds);
+
+    /**
+     * Removes the user's likes from several reviews at once, with the same constraints as
+     * {@link #unlikeReview(AuthInfo, long)} applied to every review.
+     *
+     * @param auth      authentication identity of the user performing the unlikes
+     * @param reviewIds the IDs of the reviews to unlike
+     * @return the total number of likes of each review, in the order of {@code reviewIds}
+     *
+     * @throws SecurityException
+     *         if {@code auth} is invalid or inactive
+     *
+     * @throws IllegalArgumentException
+     *         if {@code reviewIds} is {@code null} or any review does not exist
+     */
+    long[] unlikeReviews(AuthInfo auth, long[] reviewIds);
+
 
     /**
      * Lists reviews for a specific recipe with pagination and sorting.
@@ -191,6 +228,64 @@ public interface ReviewService {
      */
     PageResult<ReviewRecord> listByRecipe(long recipeId, int page, int size, String sort);
 
+    /**
+     * Cursor-based variant of {@link #listByRecipe(long, int, int, String)}.
+     *
+     * <p>Each page continues strictly after the last review of the previous page, so deep pages
+     * cost the same as the first one and concurrent inserts do not shift later pages.
+     * Reviews are ordered by {@code (DateModified, ReviewId)} descending, or by
+     * {@code (LikeCount, DateModified, ReviewId)} descending for <code>likes_desc</code>.</p>
+     *
+     * @param recipeId the ID of the recipe whose reviews are being listed
+     * @param cursor   the {@code nextCursor} of the previous page, or {@code null}/empty for the first page
+     * @param size     the number of items per page (1~200, values outside this range are adjusted to valid bounds)
+     * @param sort     sorting option, such as <code>"date_desc"</code> or <code>"likes_desc"</code>;
+     *                 must be the same for every page of one listing
+     * @return a {@link CursorPage} of {@link ReviewRecord} entries
+     * @throws IllegalArgumentException if {@code cursor} is malformed
+     */
+    CursorPage<ReviewRecord> listByRecipe(long recipeId, String cursor, int size, String sort);
+
+    /**
+     * Lists the reviews written by a user, newest first, with cursor-based pagination.
+     *
+     * <p>Reviews are ordered by {@code (DateModified, ReviewId)} descending. Each item carries
+     * the name of the reviewed recipe and the IDs of the users who liked the review.
+     * Reviews of deleted recipes do not appear. An unknown {@code authorId} yields an empty page.</p>
+     *
+     * @param authorId the ID of the user whose reviews are being listed
+     * @param cursor   the {@code nextCursor} of the previous page, or {@code null}/empty for the first page
+     * @param size     the number of items per page (1~200, values outside this range are adjusted to valid bounds)
+     * @return a {@link CursorPage} of {@link AuthorReviewItem} entries
+     * @throws IllegalArgumentException if {@code cursor} is malformed
+     */
+    CursorPage<AuthorReviewItem> listByAuthor(long authorId, String cursor, int size);
+
+    /**
+     * Full-text search over review text.
+     *
+     * <p>Filtering:
+     * <ul>
+     *   <li><b>keyword</b>: words matched against the review text after English stemming;
+     *       all words must appear</li>
+     *   <li><b>recipeId</b>: only reviews of this recipe (nullable)</li>
+     *   <li><b>minRating</b>: only reviews with {@code rating ≥ minRating} (nullable)</li>
+     * </ul>
+     *
+     * <p>Results are ordered by relevance, then by {@code ReviewId} descending.
+     * Reviews of deleted recipes do not appear.
+     *
+     * @param keyword   search terms (required)
+     * @param recipeId  recipe filter (nullable)
+     * @param minRating minimum rating filter (nullable)
+     * @param page      page number (1-based)
+     * @param size      page size
+     * @return a {@link PageResult} containing matching {@link ReviewRecord} entries
+     * @throws IllegalArgumentException if {@code keyword} is blank, {@code page < 1}, {@code size <= 0},
+     *                                  or {@code minRating} is outside 1 to 5
+     */
+    PageResult<ReviewRecord> searchReviews(String keyword, Long recipeId, Integer minRating, int page, int size);
+
     /**
      * Recalculates and updates the {@code aggregated_rating} and {@code review_count}
      * fields for the specified recipe.
@@ -219,4 +314,22 @@ public interface ReviewService {
      */
     RecipeRecord refreshRecipeAggregatedRating(long recipeId);
 
+    /**
+     * Same recomputation as {@link #refreshRecipeAggregatedRating(long)} without
+     * loading the updated recipe, for callers that only need the side effect.
+     *
+     * @param recipeId the ID of the recipe whose rating statistics should be recomputed
+     * @throws IllegalArgumentException if {@code recipeId} does not exist or refers to a deleted recipe
+     */
+    void recomputeRecipeAggregatedRating(long recipeId);
+
+    /**
+     * Recomputes the rating statistics of every recipe from its reviews in one
+     * set-based pass. Review writes maintain the statistics incrementally; this
+     * is the offline repair job for correcting any drift.
+     *
+     * @return the number of recipes whose statistics were rewritten
+     */
+    int repairAllAggregatedRatings();
+
 }
@@ -34,6 +34,19 @@ public interface UserService {
      */
     long register(RegisterUserReq req);
 
+    /**
+     * Registers several users at once, applying the same rules as {@link #register(RegisterUserReq)} to each request.
+     * <p>
+     * Requests are processed in order: new IDs are assigned in request order, and if several requests
+     * in the batch share a name, only the first one is registered.
+     *
+     * @param reqs the registration requests
+     * @return for each request, in order, the new user's {@code authorId}, or {@code -1} if that registration fails
+     *
+     * @throws IllegalArgumentException if {@code reqs} is {@code null}
+     */
+    long[] registerAll(List<RegisterUserReq> reqs);
+
     /**
      * Authenticates a user using password-based login.
      *
@@ -138,6 +151,23 @@ public interface UserService {
      */
     boolean follow(AuthInfo auth, long followeeId);
 
+    /**
+     * Follows several users at once, e.g. the suggested authors picked during onboarding.
+     * <p>
+     * Unlike {@link #follow(AuthInfo, long)} this is not a toggle: users that are already followed stay followed.
+     * Each ID is handled independently; IDs that do not exist, belong to inactive users, or equal the
+     * caller's own ID are skipped. Follower and following counts are updated in the same statement.
+     *
+     * @param auth        authentication info of the follower
+     * @param followeeIds the users to follow; duplicates are allowed
+     * @return for each entry of {@code followeeIds}, in order, {@code true} if the caller follows that user
+     *         after this operation, {@code false} if the ID was skipped
+     *
+     * @throws SecurityException        if {@code auth} is invalid or inactive
+     * @throws IllegalArgumentException if {@code followeeIds} is {@code null}
+     */
+    boolean[] followAll(AuthInfo auth, long[] followeeIds);
+
     /**
      * Retrieve basic profile information of a user by user ID.
      *
@@ -154,6 +184,18 @@ public interface UserService {
      */
     UserRecord getById(long userId);
 
+    /**
+     * Retrieves the basic profile information of several users at once, e.g. to render an author list.
+     * <p>
+     * Each returned record contains the same fields as {@link #getById(long)}.
+     *
+     * @param userIds the IDs of the target users
+     * @return the matching users in the order of {@code userIds}; IDs that do not exist are skipped
+     *
+     * @throws IllegalArgumentException if {@code userIds} is {@code null}
+     */
+    List<UserRecord> getByIds(long[] userIds);
+
 
     /**
      * Update profile information of a user (e.g., gender, age).
@@ -199,6 +241,25 @@ public interface UserService {
      */
     PageResult<FeedItem> feed(AuthInfo auth, int page, int size, @Nullable String category);
 
+    /**
+     * Cursor-based variant of {@link #feed(AuthInfo, int, int, String)} for infinite scrolling.
+     * <p>
+     * Items are ordered exactly as in the paged variant. Instead of an offset, the caller passes back
+     * the {@code nextCursor} of the previous page, so deep pages cost the same as the first one.
+     *
+     * @param auth         authentication info
+     * @param cursor       the {@code nextCursor} of the previous page; {@code null} or empty for the first page
+     * @param size         page size (1~200, values outside this range are adjusted to valid bounds)
+     * @param category     optional recipe category filter, null means no filtering
+     * @param includeTotal whether to count all matching recipes; when {@code false} the total is {@code null}
+     * @return one page of the timeline and the cursor for the next page ({@code null} on the last page)
+     *
+     * @throws SecurityException        if the user identity in {@code auth} is invalid or inactive
+     * @throws IllegalArgumentException if {@code cursor} is malformed
+     */
+    CursorPage<FeedItem> feed(AuthInfo auth, @Nullable String cursor, int size, @Nullable String category,
+                              boolean includeTotal);
+
 
     /**
      * Finds the active (non-deleted) user with the highest ratio of followers to followings.
@@ -0,0 +1,177 @@
+package io.sustc.service.impl;
+
+import io.sustc.dto.AuthInfo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 活跃用户校验
+ * 启动时把所有活跃用户的 AuthorId 载入一个升序 long[]，之后注册的用户和注销的用户分别记在两个小集合中，
+ * 写操作前的用户校验变为一次二分查找，不再每次 SELECT IsDeleted。
+ * register / deleteAccount 在事务提交后更新；新增集合过大时合并回主数组。加载完成前回退到数据库查询。
+ */
+@Component
+@Slf4j
+public class ActiveUserGuard {
+
+    private static final int COMPACT_THRESHOLD = 4096;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private volatile long[] activeIds = new long[0];
+
+    private final Set<Long> registered = ConcurrentHashMap.newKeySet();
+
+    private final Set<Long> deleted = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean loaded;
+
+    @PostConstruct
+    public void init() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            log.info("Active user set not loaded at startup: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 校验 auth 对应的用户存在且未注销，返回其 AuthorId
+     */
+    public long require(AuthInfo auth) {
+        if (auth == null) {
+            throw new SecurityException("auth is null");
+        }
+        long userId = auth.getAuthorId();
+        if (loaded) {
+            if (!isActive(userId)) {
+                throw new SecurityException("user is inactive");
+            }
+            return userId;
+        }
+
+        try {
+            Boolean isDeleted = jdbcTemplate.queryForObject(
+                    "SELECT IsDeleted FROM users WHERE AuthorId = ?",
+                    Boolean.class,
+                    userId
+            );
+            if (isDeleted == null || isDeleted) {
+                throw new SecurityException("user is inactive");
+            }
+            return userId;
+        } catch (EmptyResultDataAccessException e) {
+            throw new SecurityException("user does not exist", e);
+        }
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public boolean isActive(long userId) {
+        //+读取顺序与 compact 的写入顺序相反：compact 先发布新数组再清理集合，
+        //+因此先查集合、后读数组；集合中已被移除的 ID 一定出现在随后读到的新数组里
+        if (deleted.contains(userId)) {
+            return false;
+        }
+        if (registered.contains(userId)) {
+            return true;
+        }
+        return Arrays.binarySearch(activeIds, userId) >= 0;
+    }
+
+    public void onRegistered(long userId) {
+        afterCommit(() -> {
+            synchronized (this) {
+                deleted.remove(userId);
+                registered.add(userId);
+                if (registered.size() >= COMPACT_THRESHOLD) {
+                    compact();
+                }
+            }
+        });
+    }
+
+    public void onDeleted(long userId) {
+        afterCommit(() -> {
+            synchronized (this) {
+                deleted.add(userId);
+                if (deleted.size() >= COMPACT_THRESHOLD) {
+                    compact();
+                }
+            }
+        });
+    }
+
+    /**
+     * 从 users 全量重建；持有锁期间加载，之后提交的变更在 afterCommit 中等待重建完成再应用
+     */
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        long[][] buffer = {new long[1 << 12]};
+        int[] size = {0};
+        jdbcTemplate.query(
+                "SELECT AuthorId FROM users WHERE IsDeleted = FALSE ORDER BY AuthorId",
+                (RowCallbackHandler) rs -> {
+                    if (size[0] == buffer[0].length) {
+                        buffer[0] = Arrays.copyOf(buffer[0], size[0] * 2);
+                    }
+                    buffer[0][size[0]++] = rs.getLong(1);
+                }
+        );
+        activeIds = Arrays.copyOf(buffer[0], size[0]);
+        registered.clear();
+        deleted.clear();
+        loaded = true;
+        log.info("Active user set loaded: {} users in {} ms", size[0], System.currentTimeMillis() - start);
+    }
+
+    //+把两个增量集合合并回主数组；先发布新数组再清理集合，配合 isActive 先查集合后读数组的顺序
+    private void compact() {
+        long[] merged = new long[activeIds.length + registered.size()];
+        int n = 0;
+        for (long id : activeIds) {
+            if (!deleted.contains(id)) {
+                merged[n++] = id;
+            }
+        }
+        Long[] added = registered.toArray(new Long[0]);
+        for (Long id : added) {
+            if (!deleted.contains(id)) {
+                merged[n++] = id;
+            }
+        }
+        Arrays.sort(merged, 0, n);
+        activeIds = Arrays.copyOf(merged, n);
+        for (Long id : added) {
+            registered.remove(id);
+        }
+        deleted.clear();
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package io.sustc.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * 分析类查询的结果缓存
+ * 每个条目登记它依赖的表；写路径按表失效或增量重算受影响的条目，其余条目不受影响。
+ * 写操作在事务内立即递增表版本（阻止并发加载回填旧结果），提交后再执行失效/重算。
+ */
+@Component
+@Slf4j
+public class AnalyticsCache {
+
+    public static final String NUTRITION = "nutrition";
+    public static final String RECIPE_INGREDIENTS = "recipe_ingredients";
+    public static final String USER_FOLLOWS = "user_follows";
+    public static final String USERS = "users";
+
+    private static final class Entry {
+        final Object value;
+        final Set<String> tables;
+
+        Entry(Object value, Set<String> tables) {
+            this.value = value;
+            this.tables = tables;
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final Map<String, AtomicLong> tableVersions = new ConcurrentHashMap<>();
+
+    /**
+     * 读取缓存；未命中时调用 loader 计算，并仅在计算期间依赖表未被写入时回填
+     */
+    public <T> T get(String key, Set<String> tables, Supplier<T> loader) {
+        return get(key, tables, value -> true, loader);
+    }
+
+    /**
+     * 读取缓存；已有条目不满足 usable 时视为未命中，重新计算后替换该条目
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, Set<String> tables, Predicate<T> usable, Supplier<T> loader) {
+        Entry entry = entries.get(key);
+        if (entry != null && usable.test((T) entry.value)) {
+            return (T) entry.value;
+        }
+
+        long[] before = versionsOf(tables);
+        T value = loader.get();
+        if (Arrays.equals(before, versionsOf(tables))) {
+            if (entry == null) {
+                entries.putIfAbsent(key, new Entry(value, tables));
+            } else {
+                entries.replace(key, entry, new Entry(value, tables));
+            }
+        }
+        return value;
+    }
+
+    /**
+     * 失效所有依赖这些表的条目
+     */
+    public void invalidate(String... tables) {
+        recompute((key, value) -> null, tables);
+    }
+
+    /**
+     * 对依赖这些表的条目在提交后逐一调用 updater；返回 null 表示丢弃该条目
+     */
+    public void recompute(BiFunction<String, Object, Object> updater, String... tables) {
+        bump(tables);
+        runAfterCommit(() -> {
+            bump(tables);
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry entry = e.getValue();
+                if (!dependsOnAny(entry, tables)) {
+                    continue;
+                }
+                Object updated;
+                try {
+                    updated = updater.apply(e.getKey(), entry.value);
+                } catch (Exception ex) {
+                    log.warn("Incremental recompute failed for {}, dropping entry: {}", e.getKey(), ex.getMessage());
+                    updated = null;
+                }
+                //+期间条目被并发替换时放弃增量结果，直接丢弃，下次读取重新计算
+                if (updated == null || !entries.replace(e.getKey(), entry, new Entry(updated, entry.tables))) {
+                    entries.remove(e.getKey());
+                }
+            }
+        });
+    }
+
+    /**
+     * 全量导入后清空所有条目
+     */
+    public void clear() {
+        invalidate(NUTRITION, RECIPE_INGREDIENTS, USER_FOLLOWS, USERS);
+        entries.clear();
+        runAfterCommit(entries::clear);
+    }
+
+    private long[] versionsOf(Set<String> tables) {
+        long[] versions = new long[tables.size()];
+        int i = 0;
+        for (String table : tables) {
+            versions[i++] = tableVersions.computeIfAbsent(table, t -> new AtomicLong()).get();
+        }
+        return versions;
+    }
+
+    private void bump(String... tables) {
+        for (String table : tables) {
+            tableVersions.computeIfAbsent(table, t -> new AtomicLong()).incrementAndGet();
+        }
+    }
+
+    private static boolean dependsOnAny(Entry entry, String... tables) {
+        for (String table : tables) {
+            if (entry.tables.contains(table)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void runAfterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package io.sustc.service.impl;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 登录验证结果缓存
+ * 以 (AuthorId, 凭据指纹) 记录最近一次验证成功的密码，命中时 login 与点赞等接口无需再查库比对。
+ * 指纹为进程内随机密钥的 HMAC-SHA256，内存中不保留明文，也无法离线比对；
+ * 条目在 TTL 后过期，总数有上限；deleteAccount 提交后失效对应用户。只缓存成功的验证。
+ */
+@Component
+public class AuthSessionCache {
+
+    @Value("${sustc.auth.session-cache-size:100000}")
+    private int maxSize;
+
+    @Value("${sustc.auth.session-ttl-ms:600000}")
+    private long ttlMillis;
+
+    private final Map<Long, Verified> sessions = new ConcurrentHashMap<>();
+
+    //+每次失效递增；验证期间发生过失效的结果不回填，避免缓存已注销用户的旧状态
+    private final AtomicLong generation = new AtomicLong();
+
+    private final SecretKeySpec fingerprintKey;
+
+    private final ThreadLocal<Mac> macs;
+
+    private static final class Verified {
+
+        final byte[] fingerprint;
+        final long expiresAt;
+
+        Verified(byte[] fingerprint, long expiresAt) {
+            this.fingerprint = fingerprint;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    public AuthSessionCache() {
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        fingerprintKey = new SecretKeySpec(key, "HmacSHA256");
+        macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(fingerprintKey);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("HmacSHA256 not available", e);
+            }
+        });
+    }
+
+    public long generation() {
+        return generation.get();
+    }
+
+    public boolean isVerified(long authorId, String password) {
+        Verified verified = sessions.get(authorId);
+        if (verified == null) {
+            return false;
+        }
+        if (verified.expiresAt <= System.currentTimeMillis()) {
+            sessions.remove(authorId, verified);
+            return false;
+        }
+        return MessageDigest.isEqual(verified.fingerprint, fingerprint(authorId, password));
+    }
+
+    /**
+     * 记录一次成功的验证；generation 为验证前读取的值，其间有失效则放弃回填
+     */
+    public void putVerified(long authorId, String password, long loadedAt) {
+        long now = System.currentTimeMillis();
+        if (sessions.size() >= maxSize) {
+            //+先清理过期条目，仍然超限时整体清空，热点用户会很快重新填充
+            sessions.values().removeIf(v -> v.expiresAt <= now);
+            if (sessions.size() >= maxSize) {
+                sessions.clear();
+            }
+        }
+        if (generation.get() == loadedAt) {
+            sessions.put(authorId, new Verified(fingerprint(authorId, password), now + ttlMillis));
+        }
+    }
+
+    /**
+     * 立即失效，并在当前事务提交后再失效一次，覆盖提交前被并发验证回填的旧状态
+     */
+    public void invalidate(long authorId) {
+        generation.incrementAndGet();
+        sessions.remove(authorId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    generation.incrementAndGet();
+                    sessions.remove(authorId);
+                }
+            });
+        }
+    }
+
+    public void clear() {
+        generation.incrementAndGet();
+        sessions.clear();
+    }
+
+    private byte[] fingerprint(long authorId, String password) {
+        Mac mac = macs.get();
+        mac.update(Long.toString(authorId).getBytes(StandardCharsets.UTF_8));
+        mac.update((byte) 0);
+        return mac.doFinal(password.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,87 @@
+package io.sustc.service.impl;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * 凭据校验
+ * getById 需要返回原始密码，users.Password 只能保留明文，这里按常数时间比对。
+ * 验证成功的结果记入 {@link AuthSessionCache}，重复登录直接在内存中完成，不再查库。
+ */
+@Component
+public class CredentialStore {
+
+    public enum Outcome {
+        OK,
+        NOT_FOUND,
+        INACTIVE,
+        MISMATCH
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private AuthSessionCache authSessionCache;
+
+    @Autowired
+    private ActiveUserGuard activeUserGuard;
+
+    private static final class StoredCredential {
+
+        final String password;
+        final boolean active;
+
+        StoredCredential(String password, boolean active) {
+            this.password = password;
+            this.active = active;
+        }
+    }
+
+    /**
+     * 与原先的逐行比对语义一致：null 密码不匹配，空串与存储的空串视为匹配；login 自行拒绝空白密码
+     */
+    public Outcome authenticate(long authorId, String password) {
+        if (password == null) {
+            return Outcome.MISMATCH;
+        }
+        //+已注销或不存在的用户不查库
+        if (activeUserGuard.isLoaded() && !activeUserGuard.isActive(authorId)) {
+            return Outcome.INACTIVE;
+        }
+        if (authSessionCache.isVerified(authorId, password)) {
+            return Outcome.OK;
+        }
+
+        long generation = authSessionCache.generation();
+        StoredCredential stored;
+        try {
+            stored = jdbcTemplate.queryForObject(
+                    "SELECT Password, IsDeleted FROM users WHERE AuthorId = ?",
+                    (rs, rowNum) -> new StoredCredential(rs.getString(1), !rs.getBoolean(2)),
+                    authorId
+            );
+        } catch (EmptyResultDataAccessException e) {
+            return Outcome.NOT_FOUND;
+        }
+        if (stored == null) {
+            return Outcome.NOT_FOUND;
+        }
+        if (!stored.active) {
+            return Outcome.INACTIVE;
+        }
+        if (stored.password == null || !MessageDigest.isEqual(
+                stored.password.getBytes(StandardCharsets.UTF_8),
+                password.getBytes(StandardCharsets.UTF_8))) {
+            return Outcome.MISMATCH;
+        }
+
+        authSessionCache.putVerified(authorId, password, generation);
+        return Outcome.OK;
+    }
+}
@@ -33,6 +33,21 @@ public class DatabaseServiceImpl implements DatabaseService {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private AnalyticsCache analyticsCache;
+
+    @Autowired
+    private AuthSessionCache authSessionCache;
+
+    @Autowired
+    private List<FeedIndex> feedIndexes;
+
+    @Autowired
+    private FollowGraph followGraph;
+
+    @Autowired
+    private ActiveUserGuard activeUserGuard;
+
     @Override
     @Transactional
     public void importData(
@@ -43,6 +58,8 @@ public class DatabaseServiceImpl implements DatabaseService {
         createTables();
 
         String[] deleteTables = {
+                "feed_timeline",
+                "feed_pull_authors",
                 "user_favorite_recipes",
                 "recipe_keywords",
                 "keywords",
@@ -70,8 +87,15 @@ public class DatabaseServiceImpl implements DatabaseService {
 
         if (userRecords != null && !userRecords.isEmpty()) {
             String userSql = "INSERT INTO users " +
-                    "(AuthorId, AuthorName, Gender, Age, Followers, Following, Password, IsDeleted) " +
-                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+                    "(AuthorId, AuthorName, Gender, Age, Followers, Following, Password, IsDeleted, NameClaimed) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+            //+导入数据中存在重名用户：每个名字只由第一次出现的用户占用，满足 idx_users_name_claimed 的唯一约束
+            boolean[] nameClaimed = new boolean[userRecords.size()];
+            Set<String> claimedNames = new HashSet<>();
+            for (int i = 0; i < userRecords.size(); i++) {
+                nameClaimed[i] = claimedNames.add(userRecords.get(i).getAuthorName());
+            }
 
             for (int start = 0; start < userRecords.size(); start += batchSize) {
                 final int from = start;
@@ -88,6 +112,7 @@ public class DatabaseServiceImpl implements DatabaseService {
                         ps.setInt(6, u.getFollowing());
                         ps.setString(7, u.getPassword());
                         ps.setBoolean(8, u.isDeleted());
+                        ps.setBoolean(9, nameClaimed[from + i]);
                     }
 
                     @Override
@@ -241,6 +266,13 @@ public class DatabaseServiceImpl implements DatabaseService {
                         }
                     });
                 }
+
+                //+一次性回填配料数，之后由 createRecipe / deleteRecipe 维护
+                jdbcTemplate.update(
+                        "UPDATE recipes r SET IngredientCount = c.Cnt " +
+                                "FROM (SELECT RecipeId, COUNT(*) AS Cnt FROM recipe_ingredients GROUP BY RecipeId) c " +
+                                "WHERE r.RecipeId = c.RecipeId"
+                );
             }
         }
 
@@ -315,6 +347,14 @@ public class DatabaseServiceImpl implements DatabaseService {
                         }
                     });
                 }
+
+                //+回填评分累计值；AggregatedRating/ReviewCount 保留导入值，首次评论写入时才按累计值重算
+                jdbcTemplate.update(
+                        "UPDATE recipes r SET RatingSum = s.RatingSum, RatingCount = s.RatingCount " +
+                                "FROM (SELECT RecipeId, SUM(Rating) AS RatingSum, COUNT(*) AS RatingCount " +
+                                "      FROM reviews WHERE Rating > 0 GROUP BY RecipeId) s " +
+                                "WHERE r.RecipeId = s.RecipeId"
+                );
             }
         }
 
@@ -357,6 +397,13 @@ public class DatabaseServiceImpl implements DatabaseService {
                         log.warn("Failed to insert some review_likes (foreign key constraint): {}", e.getMessage());
                     }
                 }
+
+                //+以实际插入的点赞为准回填计数器，之后由 likeReview / unlikeReview 增量维护
+                jdbcTemplate.update(
+                        "UPDATE reviews r SET LikeCount = lc.Cnt " +
+                                "FROM (SELECT ReviewId, COUNT(*) AS Cnt FROM review_likes GROUP BY ReviewId) lc " +
+                                "WHERE r.ReviewId = lc.ReviewId"
+                );
             }
         }
 
@@ -404,12 +451,40 @@ public class DatabaseServiceImpl implements DatabaseService {
                     });
                 }
             }
+
+            //+以实际关注边为准回填计数器，之后由 follow / deleteAccount 增量维护
+            jdbcTemplate.update(
+                    "UPDATE users u SET Followers = COALESCE(fc.Cnt, 0), Following = COALESCE(fo.Cnt, 0) " +
+                            "FROM users x " +
+                            "LEFT JOIN (SELECT FollowingId AS AuthorId, COUNT(*) AS Cnt FROM user_follows GROUP BY FollowingId) fc " +
+                            "    ON fc.AuthorId = x.AuthorId " +
+                            "LEFT JOIN (SELECT FollowerId AS AuthorId, COUNT(*) AS Cnt FROM user_follows GROUP BY FollowerId) fo " +
+                            "    ON fo.AuthorId = x.AuthorId " +
+                            "WHERE u.AuthorId = x.AuthorId"
+            );
         }
+
+        //+新用户从导入数据的最大 AuthorId 之后开始编号
+        jdbcTemplate.queryForObject(
+                "SELECT setval('users_id_seq', (SELECT COALESCE(MAX(AuthorId), 0) + 1 FROM users), false)",
+                Long.class
+        );
+
+        activeUserGuard.rebuild();
+        followGraph.rebuild();
+        for (FeedIndex feedIndex : feedIndexes) {
+            feedIndex.rebuild();
+        }
+
+        analyticsCache.clear();
+        authSessionCache.clear();
     }
 
 
     private void createTables() {
         String[] dropTableSQLs = {
+                "DROP TABLE IF EXISTS feed_timeline CASCADE",
+                "DROP TABLE IF EXISTS feed_pull_authors CASCADE",
                 "DROP TABLE IF EXISTS user_favorite_recipes CASCADE",
                 "DROP TABLE IF EXISTS recipe_keywords CASCADE",
                 "DROP TABLE IF EXISTS keywords CASCADE",
@@ -459,11 +534,14 @@ public class DatabaseServiceImpl implements DatabaseService {
                         "    Gender VARCHAR(10) CHECK (Gender IN ('Male', 'Female')), " +
                         "    Age INTEGER CHECK (Age > 0), " +
                         "    Password TEXT, " +
+                        "    NameClaimed BOOLEAN NOT NULL DEFAULT TRUE, " +
                         "    IsDeleted BOOLEAN DEFAULT FALSE, " +
                         "    Followers INTEGER DEFAULT 0 CHECK (Followers >= 0), " +
                         "    Following INTEGER DEFAULT 0 CHECK (Following >= 0)" +
                         ")",
 
+                "CREATE SEQUENCE IF NOT EXISTS users_id_seq OWNED BY users.AuthorId",
+
                 "CREATE TABLE IF NOT EXISTS recipes (" +
                         "    RecipeId BIGINT PRIMARY KEY, " +
                         "    AuthorId BIGINT NOT NULL, " +
@@ -478,6 +556,10 @@ public class DatabaseServiceImpl implements DatabaseService {
                         "    RecipeYield TEXT, " +
                         "    AggregatedRating DECIMAL(3,2) CHECK (AggregatedRating >= 0 AND AggregatedRating <= 5), " +
                         "    ReviewCount INTEGER DEFAULT 0 CHECK (ReviewCount >= 0), " +
+                        "    RatingSum BIGINT NOT NULL DEFAULT 0 CHECK (RatingSum >= 0), " +
+                        "    RatingCount INTEGER NOT NULL DEFAULT 0 CHECK (RatingCount >= 0), " +
+                        "    IngredientCount INTEGER NOT NULL DEFAULT 0 CHECK (IngredientCount >= 0), " +
+                        "    IsDeleted BOOLEAN NOT NULL DEFAULT FALSE, " +
                         "    FOREIGN KEY (AuthorId) REFERENCES users(AuthorId)" +
                         ")",
 
@@ -489,6 +571,7 @@ public class DatabaseServiceImpl implements DatabaseService {
                         "    Review TEXT, " +
                         "    DateSubmitted TIMESTAMP, " +
                         "    DateModified TIMESTAMP, " +
+                        "    LikeCount INTEGER NOT NULL DEFAULT 0 CHECK (LikeCount >= 0), " +
                         "    FOREIGN KEY (RecipeId) REFERENCES recipes(RecipeId) ON DELETE CASCADE, " +
                         "    FOREIGN KEY (AuthorId) REFERENCES users(AuthorId)" +
                         ")",
@@ -517,6 +600,20 @@ public class DatabaseServiceImpl implements DatabaseService {
                         "    CHECK (FollowerId != FollowingId)" +
                         ")",
 
+                "CREATE TABLE IF NOT EXISTS feed_timeline (" +
+                        "    FollowerId BIGINT NOT NULL, " +
+                        "    RecipeId BIGINT NOT NULL, " +
+                        "    AuthorId BIGINT NOT NULL, " +
+                        "    DatePublished TIMESTAMP, " +
+                        "    RecipeCategory TEXT, " +
+                        "    PRIMARY KEY (FollowerId, RecipeId), " +
+                        "    FOREIGN KEY (RecipeId) REFERENCES recipes(RecipeId) ON DELETE CASCADE" +
+                        ")",
+
+                "CREATE TABLE IF NOT EXISTS feed_pull_authors (" +
+                        "    AuthorId BIGINT PRIMARY KEY" +
+                        ")",
+
                 "CREATE TABLE IF NOT EXISTS nutrition (" +
                         "    RecipeId BIGINT PRIMARY KEY, " +
                         "    Calories NUMERIC(10, 2) NOT NULL, " +
@@ -607,23 +704,30 @@ public class DatabaseServiceImpl implements DatabaseService {
     private void createIndexes() {
         String[] createIndexSQLs = {
                 "CREATE INDEX IF NOT EXISTS idx_users_authorname ON users(AuthorName)",
+                "CREATE UNIQUE INDEX IF NOT EXISTS idx_users_name_claimed ON users(AuthorName) WHERE NameClaimed",
                 "CREATE INDEX IF NOT EXISTS idx_users_isdeleted ON users(IsDeleted) WHERE IsDeleted = FALSE",
+                "CREATE INDEX IF NOT EXISTS idx_users_follow_ratio ON users((Followers * 1.0 / Following) DESC, AuthorId ASC) " +
+                        "WHERE IsDeleted = FALSE AND Following > 0",
 
-                "CREATE INDEX IF NOT EXISTS idx_recipes_authorid ON recipes(AuthorId)",
                 "CREATE INDEX IF NOT EXISTS idx_recipes_category ON recipes(RecipeCategory)",
                 "CREATE INDEX IF NOT EXISTS idx_recipes_datepublished ON recipes(DatePublished DESC NULLS LAST)",
                 "CREATE INDEX IF NOT EXISTS idx_recipes_rating ON recipes(AggregatedRating DESC NULLS LAST)",
                 "CREATE INDEX IF NOT EXISTS idx_recipes_reviewcount ON recipes(ReviewCount DESC)",
-                "CREATE INDEX IF NOT EXISTS idx_recipes_feed ON recipes(AuthorId, RecipeCategory, DatePublished DESC NULLS LAST)",
+                "CREATE INDEX IF NOT EXISTS idx_recipes_feed ON recipes(AuthorId, RecipeCategory, DatePublished DESC NULLS LAST, RecipeId DESC)",
+                "CREATE INDEX IF NOT EXISTS idx_recipes_author_date ON recipes(AuthorId, DatePublished DESC NULLS LAST, RecipeId DESC)",
                 "CREATE INDEX IF NOT EXISTS idx_recipes_category_rating ON recipes(RecipeCategory, AggregatedRating DESC NULLS LAST)",
                 "CREATE INDEX IF NOT EXISTS idx_recipes_name_lower ON recipes(LOWER(Name))",
                 "CREATE INDEX IF NOT EXISTS idx_recipes_description_lower ON recipes(LOWER(Description))",
+                "CREATE INDEX IF NOT EXISTS idx_recipes_tombstone ON recipes(RecipeId) WHERE IsDeleted = TRUE",
+                "CREATE INDEX IF NOT EXISTS idx_recipes_ingredient_count ON recipes(IngredientCount DESC, RecipeId ASC) WHERE IngredientCount > 0",
 
                 "CREATE INDEX IF NOT EXISTS idx_reviews_recipeid ON reviews(RecipeId)",
-                "CREATE INDEX IF NOT EXISTS idx_reviews_authorid ON reviews(AuthorId)",
+                "CREATE INDEX IF NOT EXISTS idx_reviews_author_date ON reviews(AuthorId, DateModified DESC, ReviewId DESC)",
                 "CREATE INDEX IF NOT EXISTS idx_reviews_datemodified ON reviews(DateModified DESC)",
                 "CREATE INDEX IF NOT EXISTS idx_reviews_rating ON reviews(Rating)",
-                "CREATE INDEX IF NOT EXISTS idx_reviews_recipe_date ON reviews(RecipeId, DateModified DESC)",
+                "CREATE INDEX IF NOT EXISTS idx_reviews_text_search ON reviews USING GIN (to_tsvector('english', COALESCE(Review, '')))",
+                "CREATE INDEX IF NOT EXISTS idx_reviews_recipe_date ON reviews(RecipeId, DateModified DESC, ReviewId DESC)",
+                "CREATE INDEX IF NOT EXISTS idx_reviews_recipe_likes ON reviews(RecipeId, LikeCount DESC, DateModified DESC, ReviewId DESC)",
 
                 "CREATE INDEX IF NOT EXISTS idx_recipe_ingredients_recipeid ON recipe_ingredients(RecipeId)",
                 "CREATE INDEX IF NOT EXISTS idx_recipe_ingredients_part_lower ON recipe_ingredients(LOWER(IngredientPart))",
@@ -634,6 +738,11 @@ public class DatabaseServiceImpl implements DatabaseService {
                 "CREATE INDEX IF NOT EXISTS idx_user_follows_followerid ON user_follows(FollowerId)",
                 "CREATE INDEX IF NOT EXISTS idx_user_follows_followingid ON user_follows(FollowingId)",
 
+                "CREATE INDEX IF NOT EXISTS idx_feed_timeline_order ON feed_timeline(FollowerId, DatePublished DESC NULLS LAST, RecipeId DESC)",
+                "CREATE INDEX IF NOT EXISTS idx_feed_timeline_category ON feed_timeline(FollowerId, RecipeCategory, DatePublished DESC NULLS LAST, RecipeId DESC)",
+                "CREATE INDEX IF NOT EXISTS idx_feed_timeline_recipe ON feed_timeline(RecipeId)",
+                "CREATE INDEX IF NOT EXISTS idx_feed_timeline_author ON feed_timeline(AuthorId)",
+
                 "CREATE INDEX IF NOT EXISTS idx_nutrition_calories ON nutrition(Calories ASC NULLS LAST)",
 
                 "CREATE INDEX IF NOT EXISTS idx_instructions_recipeid ON instructions(RecipeId)",
@@ -0,0 +1,48 @@
+package io.sustc.service.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Base64;
+
+/**
+ * 关注流的 keyset 游标
+ * 记录上一页最后一行的排序键 (DatePublished, RecipeId)，编码方式与 {@link ReviewCursor} 一致。
+ * DatePublished 可能为 NULL（排序时位于最后），需要单独标记。
+ */
+final class FeedCursor {
+
+    private static final String NULL_DATE = "-";
+
+    final Timestamp datePublished;
+    final long recipeId;
+
+    FeedCursor(Timestamp datePublished, long recipeId) {
+        this.datePublished = datePublished;
+        this.recipeId = recipeId;
+    }
+
+    String encode() {
+        String raw = "f|" + (datePublished == null ? NULL_DATE : datePublished.toString()) + "|" + recipeId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析游标；空串表示从第一页开始，返回 null
+     */
+    static FeedCursor decode(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", -1);
+            if (parts.length != 3 || !"f".equals(parts[0])) {
+                throw new IllegalArgumentException("invalid cursor");
+            }
+            Timestamp date = NULL_DATE.equals(parts[1]) ? null : Timestamp.valueOf(parts[1]);
+            return new FeedCursor(date, Long.parseLong(parts[2]));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("invalid cursor", e);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package io.sustc.service.impl;
+
+/**
+ * 关注流的预计算索引
+ * 写路径在事务内通知所有实现；未启用的实现直接忽略通知。
+ * feed 只从处于启用状态的实现读取一页 RecipeId，再统一回表取展示字段。
+ */
+public interface FeedIndex {
+
+    /**
+     * 由 sustc.feed.mode 决定，同一时刻至多一个实现启用
+     */
+    boolean isActive();
+
+    /**
+     * 按 DatePublished DESC NULLS LAST, RecipeId DESC 顺序返回第 offset 条起的至多 limit 个食谱
+     */
+    FeedPage page(long followerId, String category, int offset, int limit, boolean countTotal);
+
+    void onRecipeCreated(long recipeId, long authorId);
+
+    void onRecipeDeleted(long recipeId, long authorId);
+
+    void onFollow(long followerId, long followeeId);
+
+    void onUnfollow(long followerId, long followeeId);
+
+    void onAccountDeleted(long userId);
+
+    /**
+     * 全量导入后从基础表重建
+     */
+    void rebuild();
+}
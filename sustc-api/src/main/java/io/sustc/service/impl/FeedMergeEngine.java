@@ -0,0 +1,314 @@
+package io.sustc.service.impl;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 内存中的关注流归并引擎
+ * 每个作者缓存一份按 (DatePublished DESC NULLS LAST, RecipeId DESC) 排好序的原始类型数组，
+ * 一页关注流由关注作者列表的堆式 k 路归并得到，只需弹出 offset + limit 个元素，
+ * 而不是对所有关注作者的全部食谱排序。作者列表按需从数据库加载，写入提交后失效重载；关注的作者取自 {@link FollowGraph}。
+ */
+@Component
+public class FeedMergeEngine implements FeedIndex {
+
+    //+DESC NULLS LAST：把 NULL 映射为最小值，降序时自然排在最后
+    private static final long NULL_DATE = Long.MIN_VALUE;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private FollowGraph followGraph;
+
+    @Value("${sustc.feed.mode:join}")
+    private String mode;
+
+    private final Map<Long, AuthorRecipes> authors = new ConcurrentHashMap<>();
+
+    //+分类字符串到整数编码，列表中只存编码
+    private final Map<String, Integer> categoryCodes = new ConcurrentHashMap<>();
+
+    private final AtomicInteger nextCategoryCode = new AtomicInteger();
+
+    //+每次失效递增；加载期间发生失效的结果不回填
+    private final AtomicLong generation = new AtomicLong();
+
+    private static final class AuthorRecipes {
+
+        final long[] dates;
+        final long[] recipeIds;
+        final int[] categories;
+        final Map<Integer, Integer> categoryCounts;
+
+        AuthorRecipes(long[] dates, long[] recipeIds, int[] categories) {
+            this.dates = dates;
+            this.recipeIds = recipeIds;
+            this.categories = categories;
+            this.categoryCounts = new HashMap<>();
+            for (int c : categories) {
+                categoryCounts.merge(c, 1, Integer::sum);
+            }
+        }
+    }
+
+    @Override
+    public boolean isActive() {
+        return "memory".equalsIgnoreCase(mode);
+    }
+
+    @Override
+    public FeedPage page(long followerId, String category, int offset, int limit, boolean countTotal) {
+        List<Long> followees;
+        if (followGraph.isLoaded()) {
+            long[] ids = followGraph.following(followerId);
+            followees = new ArrayList<>(ids.length);
+            for (long id : ids) {
+                followees.add(id);
+            }
+        } else {
+            followees = jdbcTemplate.queryForList(
+                    "SELECT FollowingId FROM user_follows WHERE FollowerId = ?",
+                    Long.class,
+                    followerId
+            );
+        }
+        List<AuthorRecipes> lists = load(followees);
+
+        //+分类编码在加载作者列表时分配，必须先加载再解析；关注的作者都没有该分类时编码不存在，结果为空
+        int categoryCode = -1;
+        if (category != null) {
+            Integer code = categoryCodes.get(category);
+            if (code == null) {
+                return new FeedPage(new long[0], countTotal ? 0 : -1);
+            }
+            categoryCode = code;
+        }
+
+        long total = -1;
+        if (countTotal) {
+            total = 0;
+            for (AuthorRecipes list : lists) {
+                total += categoryCode < 0 ? list.recipeIds.length : list.categoryCounts.getOrDefault(categoryCode, 0);
+            }
+        }
+
+        return new FeedPage(merge(lists, categoryCode, offset, limit), total);
+    }
+
+    /**
+     * 堆中保存作者下标，比较各作者当前位置的 (日期, RecipeId)，堆顶为全局最新的一条
+     */
+    private static long[] merge(List<AuthorRecipes> lists, int categoryCode, int offset, int limit) {
+        int k = lists.size();
+        AuthorRecipes[] sources = lists.toArray(new AuthorRecipes[0]);
+        int[] positions = new int[k];
+        int[] heap = new int[k];
+        int heapSize = 0;
+        for (int i = 0; i < k; i++) {
+            positions[i] = nextMatch(sources[i], 0, categoryCode);
+            if (positions[i] < sources[i].recipeIds.length) {
+                heap[heapSize++] = i;
+            }
+        }
+        for (int i = heapSize / 2 - 1; i >= 0; i--) {
+            siftDown(heap, heapSize, i, sources, positions);
+        }
+
+        long[] result = new long[limit];
+        int taken = 0;
+        int skipped = 0;
+        while (heapSize > 0 && taken < limit) {
+            int top = heap[0];
+            AuthorRecipes source = sources[top];
+            if (skipped < offset) {
+                skipped++;
+            } else {
+                result[taken++] = source.recipeIds[positions[top]];
+            }
+            positions[top] = nextMatch(source, positions[top] + 1, categoryCode);
+            if (positions[top] >= source.recipeIds.length) {
+                heap[0] = heap[--heapSize];
+            }
+            siftDown(heap, heapSize, 0, sources, positions);
+        }
+        return taken == limit ? result : Arrays.copyOf(result, taken);
+    }
+
+    private static int nextMatch(AuthorRecipes source, int from, int categoryCode) {
+        int i = from;
+        if (categoryCode >= 0) {
+            while (i < source.categories.length && source.categories[i] != categoryCode) {
+                i++;
+            }
+        }
+        return i;
+    }
+
+    private static void siftDown(int[] heap, int size, int i, AuthorRecipes[] sources, int[] positions) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) {
+                return;
+            }
+            int best = left;
+            int right = left + 1;
+            if (right < size && newer(heap[right], heap[left], sources, positions)) {
+                best = right;
+            }
+            if (!newer(heap[best], heap[i], sources, positions)) {
+                return;
+            }
+            int tmp = heap[i];
+            heap[i] = heap[best];
+            heap[best] = tmp;
+            i = best;
+        }
+    }
+
+    private static boolean newer(int a, int b, AuthorRecipes[] sources, int[] positions) {
+        long dateA = sources[a].dates[positions[a]];
+        long dateB = sources[b].dates[positions[b]];
+        if (dateA != dateB) {
+            return dateA > dateB;
+        }
+        return sources[a].recipeIds[positions[a]] > sources[b].recipeIds[positions[b]];
+    }
+
+    /**
+     * 命中缓存的作者直接使用，未命中的一次查询批量加载
+     */
+    private List<AuthorRecipes> load(List<Long> authorIds) {
+        List<AuthorRecipes> lists = new ArrayList<>(authorIds.size());
+        List<Long> missing = new ArrayList<>();
+        for (Long authorId : authorIds) {
+            AuthorRecipes list = authors.get(authorId);
+            if (list != null) {
+                lists.add(list);
+            } else {
+                missing.add(authorId);
+            }
+        }
+        if (missing.isEmpty()) {
+            return lists;
+        }
+
+        long loadedAt = generation.get();
+        Map<Long, List<Object[]>> rows = new HashMap<>();
+        for (Long authorId : missing) {
+            rows.put(authorId, new ArrayList<>());
+        }
+        Long[] ids = missing.toArray(new Long[0]);
+        jdbcTemplate.query(
+                "SELECT r.AuthorId, r.RecipeId, r.DatePublished, r.RecipeCategory " +
+                        "FROM recipes r JOIN users u ON u.AuthorId = r.AuthorId AND u.IsDeleted = FALSE " +
+                        "WHERE r.AuthorId = ANY(?) AND r.IsDeleted = FALSE " +
+                        "ORDER BY r.AuthorId, r.DatePublished DESC NULLS LAST, r.RecipeId DESC",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids)),
+                (RowCallbackHandler) rs -> rows.get(rs.getLong(1)).add(new Object[]{
+                        rs.getLong(2), rs.getTimestamp(3), rs.getString(4)
+                })
+        );
+
+        for (Map.Entry<Long, List<Object[]>> e : rows.entrySet()) {
+            List<Object[]> authorRows = e.getValue();
+            int n = authorRows.size();
+            long[] dates = new long[n];
+            long[] recipeIds = new long[n];
+            int[] categories = new int[n];
+            for (int i = 0; i < n; i++) {
+                Object[] row = authorRows.get(i);
+                recipeIds[i] = (Long) row[0];
+                dates[i] = toMicros((Timestamp) row[1]);
+                categories[i] = codeOf((String) row[2]);
+            }
+            AuthorRecipes list = new AuthorRecipes(dates, recipeIds, categories);
+            lists.add(list);
+            if (generation.get() == loadedAt) {
+                authors.put(e.getKey(), list);
+            }
+        }
+        return lists;
+    }
+
+    private int codeOf(String category) {
+        if (category == null) {
+            //+分类为 NULL 的食谱不会被任何分类过滤命中
+            return Integer.MAX_VALUE;
+        }
+        return categoryCodes.computeIfAbsent(category, c -> nextCategoryCode.getAndIncrement());
+    }
+
+    //+保留到微秒，与数据库 TIMESTAMP 精度一致，保证排序与 SQL 相同
+    private static long toMicros(Timestamp ts) {
+        if (ts == null) {
+            return NULL_DATE;
+        }
+        return Math.floorDiv(ts.getTime(), 1000L) * 1_000_000L + ts.getNanos() / 1000;
+    }
+
+    @Override
+    public void onRecipeCreated(long recipeId, long authorId) {
+        invalidate(authorId);
+    }
+
+    @Override
+    public void onRecipeDeleted(long recipeId, long authorId) {
+        invalidate(authorId);
+    }
+
+    @Override
+    public void onFollow(long followerId, long followeeId) {
+        //+关注关系由 FollowGraph 维护，无需处理
+    }
+
+    @Override
+    public void onUnfollow(long followerId, long followeeId) {
+    }
+
+    @Override
+    public void onAccountDeleted(long userId) {
+        invalidate(userId);
+    }
+
+    @Override
+    public void rebuild() {
+        generation.incrementAndGet();
+        authors.clear();
+    }
+
+    /**
+     * 立即失效，并在当前事务提交后再失效一次，覆盖提交前被并发加载回填的旧列表
+     */
+    private void invalidate(long authorId) {
+        if (!isActive()) {
+            return;
+        }
+        generation.incrementAndGet();
+        authors.remove(authorId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    generation.incrementAndGet();
+                    authors.remove(authorId);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package io.sustc.service.impl;
+
+/**
+ * 关注流一页的结果：有序的 RecipeId 与总数（未计数时为 -1）
+ */
+public final class FeedPage {
+
+    final long[] recipeIds;
+    final long total;
+
+    FeedPage(long[] recipeIds, long total) {
+        this.recipeIds = recipeIds;
+        this.total = total;
+    }
+}
@@ -0,0 +1,219 @@
+package io.sustc.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 写扩散（fan-out-on-write）的关注流时间线
+ * feed_timeline 为每个关注者保存其关注作者的食谱，feed 变为按 FollowerId 的索引区间扫描。
+ * 粉丝数超过阈值的作者登记在 feed_pull_authors 中，不做写扩散，读取时再从 recipes 拉取合并（读扩散）。
+ * 作者一旦转为读扩散便不再回退，避免粉丝数在阈值附近抖动时反复重建时间线。
+ */
+@Component
+@Slf4j
+public class FeedTimeline implements FeedIndex {
+
+    private static final String ORDER = "DatePublished DESC NULLS LAST, RecipeId DESC";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${sustc.feed.mode:join}")
+    private String mode;
+
+    @Value("${sustc.feed.fanout-max-followers:10000}")
+    private long fanOutMaxFollowers;
+
+    @Value("${sustc.feed.rebuild-timeline-on-start:false}")
+    private boolean rebuildOnStart;
+
+    @PostConstruct
+    public void init() {
+        //+其他模式下不触碰时间线表
+        if (!isActive()) {
+            return;
+        }
+        //+importData 会重建时间线；启动时只在时间线为空（首次启用）或显式要求时重建。
+        //+其他模式下写路径不维护时间线，从其他模式切回时需开启 rebuild-timeline-on-start
+        try {
+            boolean needed = rebuildOnStart || Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                    "SELECT NOT EXISTS (SELECT 1 FROM feed_timeline) AND EXISTS (SELECT 1 FROM user_follows)",
+                    Boolean.class
+            ));
+            if (needed) {
+                rebuild();
+            }
+        } catch (Exception e) {
+            //+表尚未创建时等待导入
+            log.info("Feed timeline not checked at startup: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean isActive() {
+        return "timeline".equalsIgnoreCase(mode);
+    }
+
+    @Override
+    public FeedPage page(long followerId, String category, int offset, int limit, boolean countTotal) {
+        String timelineFilter = category != null ? " AND t.RecipeCategory = ?" : "";
+        String pullFilter = category != null ? " AND r.RecipeCategory = ?" : "";
+
+        //+两路各自沿索引取前 offset+limit 条，再合并排序截取本页
+        List<Object> params = new ArrayList<>();
+        params.add(followerId);
+        if (category != null) params.add(category);
+        params.add(offset + limit);
+        params.add(followerId);
+        if (category != null) params.add(category);
+        params.add(offset + limit);
+        params.add(limit);
+        params.add(offset);
+
+        String sql = "SELECT RecipeId FROM ( " +
+                "    (SELECT t.RecipeId, t.DatePublished FROM feed_timeline t " +
+                "     WHERE t.FollowerId = ?" + timelineFilter +
+                "     ORDER BY t.DatePublished DESC NULLS LAST, t.RecipeId DESC LIMIT ?) " +
+                "    UNION ALL " +
+                "    (SELECT r.RecipeId, r.DatePublished FROM user_follows uf " +
+                "     JOIN feed_pull_authors p ON p.AuthorId = uf.FollowingId " +
+                "     JOIN recipes r ON r.AuthorId = uf.FollowingId AND r.IsDeleted = FALSE " +
+                "     WHERE uf.FollowerId = ?" + pullFilter +
+                "     ORDER BY r.DatePublished DESC NULLS LAST, r.RecipeId DESC LIMIT ?) " +
+                ") f ORDER BY " + ORDER + " LIMIT ? OFFSET ?";
+
+        List<Long> ids = jdbcTemplate.queryForList(sql, Long.class, params.toArray());
+        long[] recipeIds = new long[ids.size()];
+        for (int i = 0; i < recipeIds.length; i++) {
+            recipeIds[i] = ids.get(i);
+        }
+
+        long total = -1;
+        if (countTotal) {
+            List<Object> countParams = new ArrayList<>();
+            countParams.add(followerId);
+            if (category != null) countParams.add(category);
+            countParams.add(followerId);
+            if (category != null) countParams.add(category);
+            Long count = jdbcTemplate.queryForObject(
+                    "SELECT (SELECT COUNT(*) FROM feed_timeline t WHERE t.FollowerId = ?" + timelineFilter + ") + " +
+                            "(SELECT COUNT(*) FROM user_follows uf " +
+                            " JOIN feed_pull_authors p ON p.AuthorId = uf.FollowingId " +
+                            " JOIN recipes r ON r.AuthorId = uf.FollowingId AND r.IsDeleted = FALSE " +
+                            " WHERE uf.FollowerId = ?" + pullFilter + ")",
+                    Long.class,
+                    countParams.toArray()
+            );
+            total = count == null ? 0 : count;
+        }
+        return new FeedPage(recipeIds, total);
+    }
+
+    @Override
+    public void onRecipeCreated(long recipeId, long authorId) {
+        if (!isActive()) {
+            return;
+        }
+        jdbcTemplate.update(
+                "INSERT INTO feed_timeline (FollowerId, RecipeId, AuthorId, DatePublished, RecipeCategory) " +
+                        "SELECT uf.FollowerId, r.RecipeId, r.AuthorId, r.DatePublished, r.RecipeCategory " +
+                        "FROM recipes r JOIN user_follows uf ON uf.FollowingId = r.AuthorId " +
+                        "WHERE r.RecipeId = ? " +
+                        "AND NOT EXISTS (SELECT 1 FROM feed_pull_authors p WHERE p.AuthorId = r.AuthorId) " +
+                        "ON CONFLICT (FollowerId, RecipeId) DO NOTHING",
+                recipeId
+        );
+    }
+
+    @Override
+    public void onRecipeDeleted(long recipeId, long authorId) {
+        if (!isActive()) {
+            return;
+        }
+        //+硬删除由外键级联；墓碑删除需要显式清理
+        jdbcTemplate.update("DELETE FROM feed_timeline WHERE RecipeId = ?", recipeId);
+    }
+
+    @Override
+    public void onFollow(long followerId, long followeeId) {
+        if (!isActive()) {
+            return;
+        }
+        //+粉丝数越过阈值时转为读扩散，并清除该作者已写扩散的记录
+        List<Long> promoted = jdbcTemplate.queryForList(
+                "INSERT INTO feed_pull_authors (AuthorId) " +
+                        "SELECT AuthorId FROM users WHERE AuthorId = ? AND Followers > ? " +
+                        "ON CONFLICT (AuthorId) DO NOTHING RETURNING AuthorId",
+                Long.class,
+                followeeId,
+                fanOutMaxFollowers
+        );
+        if (!promoted.isEmpty()) {
+            jdbcTemplate.update("DELETE FROM feed_timeline WHERE AuthorId = ?", followeeId);
+            return;
+        }
+
+        //+补齐新关注作者的历史食谱；读扩散作者由 NOT EXISTS 排除
+        jdbcTemplate.update(
+                "INSERT INTO feed_timeline (FollowerId, RecipeId, AuthorId, DatePublished, RecipeCategory) " +
+                        "SELECT ?, r.RecipeId, r.AuthorId, r.DatePublished, r.RecipeCategory " +
+                        "FROM recipes r " +
+                        "WHERE r.AuthorId = ? AND r.IsDeleted = FALSE " +
+                        "AND NOT EXISTS (SELECT 1 FROM feed_pull_authors p WHERE p.AuthorId = r.AuthorId) " +
+                        "ON CONFLICT (FollowerId, RecipeId) DO NOTHING",
+                followerId,
+                followeeId
+        );
+    }
+
+    @Override
+    public void onUnfollow(long followerId, long followeeId) {
+        if (!isActive()) {
+            return;
+        }
+        jdbcTemplate.update(
+                "DELETE FROM feed_timeline WHERE FollowerId = ? AND AuthorId = ?",
+                followerId,
+                followeeId
+        );
+    }
+
+    @Override
+    public void onAccountDeleted(long userId) {
+        if (!isActive()) {
+            return;
+        }
+        jdbcTemplate.update("DELETE FROM feed_timeline WHERE AuthorId = ? OR FollowerId = ?", userId, userId);
+        jdbcTemplate.update("DELETE FROM feed_pull_authors WHERE AuthorId = ?", userId);
+    }
+
+    @Override
+    public void rebuild() {
+        if (!isActive()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        jdbcTemplate.execute("TRUNCATE feed_timeline, feed_pull_authors");
+        jdbcTemplate.update(
+                "INSERT INTO feed_pull_authors (AuthorId) " +
+                        "SELECT AuthorId FROM users WHERE IsDeleted = FALSE AND Followers > ?",
+                fanOutMaxFollowers
+        );
+        int rows = jdbcTemplate.update(
+                "INSERT INTO feed_timeline (FollowerId, RecipeId, AuthorId, DatePublished, RecipeCategory) " +
+                        "SELECT uf.FollowerId, r.RecipeId, r.AuthorId, r.DatePublished, r.RecipeCategory " +
+                        "FROM user_follows uf " +
+                        "JOIN recipes r ON r.AuthorId = uf.FollowingId AND r.IsDeleted = FALSE " +
+                        "JOIN users u ON u.AuthorId = r.AuthorId AND u.IsDeleted = FALSE " +
+                        "WHERE NOT EXISTS (SELECT 1 FROM feed_pull_authors p WHERE p.AuthorId = r.AuthorId)"
+        );
+        log.info("Feed timeline rebuilt: {} entries in {} ms", rows, System.currentTimeMillis() - start);
+    }
+}
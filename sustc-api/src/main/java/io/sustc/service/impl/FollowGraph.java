@@ -0,0 +1,232 @@
+package io.sustc.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 内存中的关注关系图
+ * 每个用户保存两份升序的 long[] 邻接数组（关注的人 / 粉丝），与 user_follows 一一对应。
+ * 数组不可变，写入时复制后整体替换，读取无需加锁；粉丝数组只用于注销时删除入边。
+ * 只在 memory 模式下为 FeedMergeEngine 提供候选作者，其他模式不加载也不维护。
+ * 启动时加载一次，导入数据后重建；关注、取关、注销在事务提交后同步更新（write-through）。
+ */
+@Component
+@Slf4j
+public class FollowGraph {
+
+    private static final long[] EMPTY = new long[0];
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${sustc.feed.mode:join}")
+    private String mode;
+
+    private volatile Map<Long, long[]> following = new ConcurrentHashMap<>();
+    private volatile Map<Long, long[]> followers = new ConcurrentHashMap<>();
+
+    //+表尚未创建时加载失败，调用方在加载完成前回退到数据库查询
+    private volatile boolean loaded;
+
+    @PostConstruct
+    public void init() {
+        if (!isActive()) {
+            return;
+        }
+        try {
+            rebuild();
+        } catch (Exception e) {
+            log.info("Follow graph not loaded at startup: {}", e.getMessage());
+        }
+    }
+
+    public boolean isActive() {
+        return "memory".equalsIgnoreCase(mode);
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * 用户关注的作者，升序；即关注流的候选作者
+     */
+    public long[] following(long userId) {
+        return following.getOrDefault(userId, EMPTY).clone();
+    }
+
+    public void follow(long followerId, long followeeId) {
+        if (!isActive()) {
+            return;
+        }
+        afterCommit(() -> {
+            synchronized (this) {
+                following.put(followerId, insert(following.get(followerId), followeeId));
+                followers.put(followeeId, insert(followers.get(followeeId), followerId));
+            }
+        });
+    }
+
+    public void unfollow(long followerId, long followeeId) {
+        if (!isActive()) {
+            return;
+        }
+        afterCommit(() -> {
+            synchronized (this) {
+                removeEdge(following, followerId, followeeId);
+                removeEdge(followers, followeeId, followerId);
+            }
+        });
+    }
+
+    /**
+     * 注销用户：删除其所有出边和入边，与 deleteAccount 中删除 user_follows 的语句对应
+     */
+    public void removeUser(long userId) {
+        if (!isActive()) {
+            return;
+        }
+        afterCommit(() -> {
+            synchronized (this) {
+                for (long followee : following.getOrDefault(userId, EMPTY)) {
+                    removeEdge(followers, followee, userId);
+                }
+                for (long follower : followers.getOrDefault(userId, EMPTY)) {
+                    removeEdge(following, follower, userId);
+                }
+                following.remove(userId);
+                followers.remove(userId);
+            }
+        });
+    }
+
+    /**
+     * 从 user_follows 全量重建
+     * 持有写锁期间加载：加载开始后才提交的写入会在 afterCommit 中等待本次重建完成后再应用
+     */
+    public synchronized void rebuild() {
+        if (!isActive()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        EdgeBuffer edges = new EdgeBuffer();
+        jdbcTemplate.query(
+                "SELECT FollowerId, FollowingId FROM user_follows ORDER BY FollowerId, FollowingId",
+                (RowCallbackHandler) rs -> edges.add(rs.getLong(1), rs.getLong(2))
+        );
+
+        Map<Long, long[]> newFollowing = new ConcurrentHashMap<>();
+        Map<Long, Integer> inDegree = new HashMap<>();
+        int i = 0;
+        while (i < edges.size) {
+            int j = i;
+            while (j < edges.size && edges.from[j] == edges.from[i]) {
+                inDegree.merge(edges.to[j], 1, Integer::sum);
+                j++;
+            }
+            newFollowing.put(edges.from[i], Arrays.copyOfRange(edges.to, i, j));
+            i = j;
+        }
+
+        //+边按 FollowerId 升序遍历，填入的粉丝数组天然有序，无需再排序
+        Map<Long, long[]> newFollowers = new ConcurrentHashMap<>();
+        Map<Long, Integer> fill = new HashMap<>();
+        for (Map.Entry<Long, Integer> e : inDegree.entrySet()) {
+            newFollowers.put(e.getKey(), new long[e.getValue()]);
+            fill.put(e.getKey(), 0);
+        }
+        for (int k = 0; k < edges.size; k++) {
+            long followee = edges.to[k];
+            int pos = fill.get(followee);
+            newFollowers.get(followee)[pos] = edges.from[k];
+            fill.put(followee, pos + 1);
+        }
+
+        following = newFollowing;
+        followers = newFollowers;
+        loaded = true;
+        log.info("Follow graph loaded: {} edges in {} ms", edges.size, System.currentTimeMillis() - start);
+    }
+
+    private static void removeEdge(Map<Long, long[]> adjacency, long node, long neighbour) {
+        long[] current = adjacency.get(node);
+        if (current == null) {
+            return;
+        }
+        long[] next = remove(current, neighbour);
+        if (next.length == 0) {
+            adjacency.remove(node);
+        } else if (next != current) {
+            adjacency.put(node, next);
+        }
+    }
+
+    private static long[] insert(long[] sorted, long value) {
+        if (sorted == null) {
+            return new long[]{value};
+        }
+        int pos = Arrays.binarySearch(sorted, value);
+        if (pos >= 0) {
+            return sorted;
+        }
+        pos = -pos - 1;
+        long[] next = new long[sorted.length + 1];
+        System.arraycopy(sorted, 0, next, 0, pos);
+        next[pos] = value;
+        System.arraycopy(sorted, pos, next, pos + 1, sorted.length - pos);
+        return next;
+    }
+
+    private static long[] remove(long[] sorted, long value) {
+        int pos = Arrays.binarySearch(sorted, value);
+        if (pos < 0) {
+            return sorted;
+        }
+        long[] next = new long[sorted.length - 1];
+        System.arraycopy(sorted, 0, next, 0, pos);
+        System.arraycopy(sorted, pos + 1, next, pos, sorted.length - pos - 1);
+        return next;
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private static final class EdgeBuffer {
+
+        long[] from = new long[1 << 12];
+        long[] to = new long[1 << 12];
+        int size;
+
+        void add(long followerId, long followeeId) {
+            if (size == from.length) {
+                from = Arrays.copyOf(from, size * 2);
+                to = Arrays.copyOf(to, size * 2);
+            }
+            from[size] = followerId;
+            to[size] = followeeId;
+            size++;
+        }
+    }
+}
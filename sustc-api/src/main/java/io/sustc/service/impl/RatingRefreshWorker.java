@@ -0,0 +1,134 @@
+package io.sustc.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 食谱评分的延迟刷新任务
+ * 写后刷新模式下评论写入只登记脏食谱，这里按固定间隔把一段时间内的脏食谱合并，
+ * 用集合式 UPDATE 一次重算一批，热门食谱的连续评论不再在请求事务里争抢同一行锁。
+ * 评分最多滞后一个刷新间隔（加上单批执行时间）。
+ */
+@Component
+@Slf4j
+public class RatingRefreshWorker {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${sustc.review.rating-write-behind:false}")
+    private boolean enabled;
+
+    @Value("${sustc.review.rating-refresh-interval-ms:200}")
+    private long intervalMs;
+
+    @Value("${sustc.review.rating-refresh-batch-size:1000}")
+    private int batchSize;
+
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+
+    private ScheduledExecutorService executor;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rating-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.scheduleWithFixedDelay(this::drain, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(intervalMs * 10, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            //+关闭前把剩余的脏食谱刷完，避免评分停留在旧值
+            drain();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 在当前事务提交后登记需要重算评分的食谱；没有事务时立即登记
+     */
+    public void markDirtyAfterCommit(long recipeId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    dirty.add(recipeId);
+                }
+            });
+        } else {
+            dirty.add(recipeId);
+        }
+    }
+
+    private void drain() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>(dirty);
+        //+按 RecipeId 顺序加锁，避免与其它批量更新互相死锁
+        Collections.sort(ids);
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            List<Long> batch = ids.subList(from, Math.min(from + batchSize, ids.size()));
+            //+先移出再重算：重算期间新到的评论会重新登记，下一轮再刷
+            dirty.removeAll(batch);
+            try {
+                refresh(batch.toArray(new Long[0]));
+            } catch (Exception e) {
+                log.warn("Failed to refresh ratings of {} recipes, will retry: {}", batch.size(), e.getMessage());
+                dirty.addAll(batch);
+            }
+        }
+    }
+
+    private void refresh(Long[] recipeIds) {
+        jdbcTemplate.update(
+                "UPDATE recipes r SET " +
+                        "RatingSum = COALESCE(s.RatingSum, 0), " +
+                        "RatingCount = COALESCE(s.RatingCount, 0), " +
+                        "ReviewCount = COALESCE(s.RatingCount, 0), " +
+                        "AggregatedRating = COALESCE(ROUND(s.AvgRating, 2), 0.0) " +
+                        "FROM unnest(?::bigint[]) AS d(RecipeId) " +
+                        "LEFT JOIN (SELECT RecipeId, SUM(Rating) AS RatingSum, COUNT(*) AS RatingCount, " +
+                        "                  AVG(Rating)::numeric AS AvgRating " +
+                        "           FROM reviews WHERE RecipeId = ANY(?::bigint[]) AND Rating > 0 " +
+                        "           GROUP BY RecipeId) s ON s.RecipeId = d.RecipeId " +
+                        "WHERE r.RecipeId = d.RecipeId AND r.IsDeleted = FALSE",
+                ps -> {
+                    ps.setArray(1, ps.getConnection().createArrayOf("bigint", recipeIds));
+                    ps.setArray(2, ps.getConnection().createArrayOf("bigint", recipeIds));
+                }
+        );
+    }
+}
@@ -0,0 +1,155 @@
+package io.sustc.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 墓碑食谱的后台回收任务
+ * deleteRecipe 在快速删除模式下只打墓碑标记，评论与点赞由这里分批删除，
+ * 每批独立提交，避免热门食谱的大量级联删除阻塞请求线程或长时间持锁。
+ * 启动时扫描一次遗留的墓碑，之后只在有食谱入队时调度，失败的食谱延迟重试；没有待回收的食谱时不访问数据库
+ */
+@Component
+@Slf4j
+public class RecipeCleanupWorker {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${sustc.recipe.cleanup-batch-size:5000}")
+    private int batchSize;
+
+    @Value("${sustc.recipe.cleanup-retry-delay-ms:500}")
+    private long retryDelayMs;
+
+    private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+
+    //+已有一次 drain 在排队时不再重复提交
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    private ScheduledExecutorService executor;
+
+    @PostConstruct
+    public void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "recipe-cleanup");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.execute(this::sweepTombstones);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 在当前事务提交后登记待回收的食谱；没有事务时立即登记
+     */
+    public void enqueueAfterCommit(long recipeId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(recipeId);
+                }
+            });
+        } else {
+            enqueue(recipeId);
+        }
+    }
+
+    private void enqueue(long recipeId) {
+        pending.add(recipeId);
+        scheduleDrain(0);
+    }
+
+    private void scheduleDrain(long delayMs) {
+        if (executor == null || !drainScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.schedule(() -> {
+                drainScheduled.set(false);
+                drain();
+            }, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            //+已关闭
+            drainScheduled.set(false);
+        }
+    }
+
+    //+进程重启后内存队列丢失，启动时从部分索引中捞回遗留的墓碑
+    private void sweepTombstones() {
+        try {
+            pending.addAll(jdbcTemplate.queryForList(
+                    "SELECT RecipeId FROM recipes WHERE IsDeleted = TRUE",
+                    Long.class
+            ));
+        } catch (Exception e) {
+            log.debug("Tombstone sweep skipped: {}", e.getMessage());
+            return;
+        }
+        drain();
+    }
+
+    private void drain() {
+        for (Long recipeId : new ArrayList<>(pending)) {
+            try {
+                reclaim(recipeId);
+                pending.remove(recipeId);
+            } catch (Exception e) {
+                log.warn("Failed to reclaim recipe {}, will retry: {}", recipeId, e.getMessage());
+            }
+        }
+        //+本轮失败的食谱延迟重试；回收期间新入队的食谱已各自提交过 drain
+        if (!pending.isEmpty()) {
+            scheduleDrain(retryDelayMs);
+        }
+    }
+
+    private void reclaim(long recipeId) {
+        int deleted;
+        do {
+            deleted = jdbcTemplate.update(
+                    "DELETE FROM review_likes WHERE (ReviewId, AuthorId) IN (" +
+                            "SELECT rl.ReviewId, rl.AuthorId FROM reviews r " +
+                            "JOIN review_likes rl ON rl.ReviewId = r.ReviewId " +
+                            "WHERE r.RecipeId = ? LIMIT ?)",
+                    recipeId,
+                    batchSize
+            );
+        } while (deleted >= batchSize);
+
+        do {
+            deleted = jdbcTemplate.update(
+                    "DELETE FROM reviews WHERE ReviewId IN (" +
+                            "SELECT ReviewId FROM reviews WHERE RecipeId = ? LIMIT ?)",
+                    recipeId,
+                    batchSize
+            );
+        } while (deleted >= batchSize);
+
+        //+剩余的依赖行（步骤、关键词、收藏等）很少，交给 ON DELETE CASCADE
+        jdbcTemplate.update("DELETE FROM recipes WHERE RecipeId = ? AND IsDeleted = TRUE", recipeId);
+    }
+}
@@ -4,11 +4,13 @@ import io.sustc.dto.*;
 import io.sustc.service.RecipeService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
 import java.sql.Timestamp;
 import java.time.Duration;
 import java.time.format.DateTimeParseException;
@@ -21,31 +23,33 @@ public class RecipeServiceImpl implements RecipeService {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
-    private long requireActiveUser(AuthInfo auth) {
-        if (auth == null) {
-            throw new SecurityException("auth is null");
-        }
-        long userId = auth.getAuthorId();
-        try {
-            Boolean isDeleted = jdbcTemplate.queryForObject(
-                    "SELECT IsDeleted FROM users WHERE AuthorId = ?",
-                    Boolean.class,
-                    userId
-            );
-            if (isDeleted == null || isDeleted) {
-                throw new SecurityException("user is inactive");
-            }
-            return userId;
-        } catch (EmptyResultDataAccessException e) {
-            throw new SecurityException("user does not exist", e);
-        }
-    }
+    @Autowired
+    private ActiveUserGuard activeUserGuard;
+
+    @Autowired
+    private RecipeCleanupWorker recipeCleanupWorker;
+
+    //+快速删除模式：只打墓碑标记，评论/点赞交给后台任务回收
+    @Value("${sustc.recipe.fast-delete:false}")
+    private boolean fastDelete;
+
+    @Autowired
+    private AnalyticsCache analyticsCache;
+
+    @Autowired
+    private List<FeedIndex> feedIndexes;
+
+    private static final String CLOSEST_CALORIE_PAIR = "closestCaloriePair";
+    //+只缓存算过的最大 k 的一份列表，较小的 k 从中截取前缀；超过上限的 k 直接查询不入缓存
+    private static final String TOP_K_INGREDIENTS = "topKIngredients";
+
+    private static final int TOP_K_CACHE_LIMIT = 1000;
 
     @Override
     public String getNameFromID(long id) {
         try {
             return jdbcTemplate.queryForObject(
-                    "SELECT Name FROM recipes WHERE RecipeId = ?",
+                    "SELECT Name FROM recipes WHERE RecipeId = ? AND IsDeleted = FALSE",
                     String.class,
                     id
             );
@@ -68,7 +72,7 @@ public class RecipeServiceImpl implements RecipeService {
                             "n.CarbohydrateContent, n.FiberContent, n.SugarContent, n.ProteinContent " +
                             "FROM recipes r " +
                             "LEFT JOIN nutrition n ON r.RecipeId = n.RecipeId " +
-                            "WHERE r.RecipeId = ?",
+                            "WHERE r.RecipeId = ? AND r.IsDeleted = FALSE",
                     recipeId
             );
 
@@ -138,7 +142,7 @@ public class RecipeServiceImpl implements RecipeService {
         }
 
         List<Object> params = new ArrayList<>();
-        StringBuilder whereClause = new StringBuilder("WHERE 1=1");
+        StringBuilder whereClause = new StringBuilder("WHERE r.IsDeleted = FALSE");
 
         if (keyword != null && !keyword.trim().isEmpty()) {
             whereClause.append(" AND (LOWER(r.Name) LIKE ? OR LOWER(r.Description) LIKE ?)");
@@ -263,12 +267,21 @@ public class RecipeServiceImpl implements RecipeService {
     @Override
     @Transactional
     public long createRecipe(RecipeRecord dto, AuthInfo auth) {
-        long authorId = requireActiveUser(auth);
+        long authorId = activeUserGuard.require(auth);
 
         if (dto == null || dto.getName() == null || dto.getName().trim().isEmpty()) {
             throw new IllegalArgumentException("recipe name cannot be null or empty");
         }
 
+        Set<String> uniqueIngredients = new HashSet<>();
+        if (dto.getRecipeIngredientParts() != null) {
+            for (String ing : dto.getRecipeIngredientParts()) {
+                if (ing != null && !ing.trim().isEmpty()) {
+                    uniqueIngredients.add(ing.trim());
+                }
+            }
+        }
+
         Long newRecipeId = jdbcTemplate.queryForObject(
                 "SELECT COALESCE(MAX(RecipeId), 0) + 1 FROM recipes",
                 Long.class
@@ -277,8 +290,8 @@ public class RecipeServiceImpl implements RecipeService {
         jdbcTemplate.update(
                 "INSERT INTO recipes (RecipeId, Name, AuthorId, CookTime, PrepTime, TotalTime, " +
                         "DatePublished, Description, RecipeCategory, AggregatedRating, ReviewCount, " +
-                        "RecipeServings, RecipeYield) " +
-                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                        "RecipeServings, RecipeYield, IngredientCount) " +
+                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
                 newRecipeId,
                 dto.getName().trim(),
                 authorId,
@@ -291,7 +304,8 @@ public class RecipeServiceImpl implements RecipeService {
                 dto.getAggregatedRating(),
                 dto.getReviewCount(),
                 dto.getRecipeServings(),
-                dto.getRecipeYield()
+                dto.getRecipeYield(),
+                uniqueIngredients.size()
         );
 
         if (dto.getCalories() > 0) {
@@ -321,23 +335,32 @@ public class RecipeServiceImpl implements RecipeService {
                     dto.getSugarContent(),
                     dto.getProteinContent()
             );
+            long insertedId = newRecipeId;
+            analyticsCache.recompute(
+                    (key, value) -> mergeCalorieNeighbours(insertedId, (CaloriePair) value),
+                    AnalyticsCache.NUTRITION
+            );
         }
 
-        if (dto.getRecipeIngredientParts() != null && dto.getRecipeIngredientParts().length > 0) {
-            Set<String> uniqueIngredients = new HashSet<>();
-            for (String ing : dto.getRecipeIngredientParts()) {
-                if (ing != null && !ing.trim().isEmpty()) {
-                    uniqueIngredients.add(ing.trim());
-                }
-            }
-            for (String ing : uniqueIngredients) {
-                jdbcTemplate.update(
-                        "INSERT INTO recipe_ingredients (RecipeId, IngredientPart) VALUES (?, ?) " +
-                                "ON CONFLICT (RecipeId, IngredientPart) DO NOTHING",
-                        newRecipeId,
-                        ing
-                );
-            }
+        for (String ing : uniqueIngredients) {
+            jdbcTemplate.update(
+                    "INSERT INTO recipe_ingredients (RecipeId, IngredientPart) VALUES (?, ?) " +
+                            "ON CONFLICT (RecipeId, IngredientPart) DO NOTHING",
+                    newRecipeId,
+                    ing
+            );
+        }
+        if (!uniqueIngredients.isEmpty()) {
+            RankedRecipe ranked = new RankedRecipe(newRecipeId, dto.getName().trim(), uniqueIngredients.size());
+            analyticsCache.recompute(
+                    (key, value) -> value instanceof TopKIngredients
+                            ? ((TopKIngredients) value).merge(ranked) : null,
+                    AnalyticsCache.RECIPE_INGREDIENTS
+            );
+        }
+
+        for (FeedIndex feedIndex : feedIndexes) {
+            feedIndex.onRecipeCreated(newRecipeId, authorId);
         }
 
         return newRecipeId;
@@ -346,10 +369,10 @@ public class RecipeServiceImpl implements RecipeService {
     @Override
     @Transactional
     public void deleteRecipe(long recipeId, AuthInfo auth) {
-        long operatorId = requireActiveUser(auth);
+        long operatorId = activeUserGuard.require(auth);
 
         Long authorId = jdbcTemplate.queryForObject(
-                "SELECT AuthorId FROM recipes WHERE RecipeId = ?",
+                "SELECT AuthorId FROM recipes WHERE RecipeId = ? AND IsDeleted = FALSE",
                 Long.class,
                 recipeId
         );
@@ -361,20 +384,32 @@ public class RecipeServiceImpl implements RecipeService {
             throw new SecurityException("only recipe author can delete recipe");
         }
 
-        jdbcTemplate.update("DELETE FROM review_likes WHERE ReviewId IN (SELECT ReviewId FROM reviews WHERE RecipeId = ?)", recipeId);
-        jdbcTemplate.update("DELETE FROM reviews WHERE RecipeId = ?", recipeId);
-        jdbcTemplate.update("DELETE FROM recipe_ingredients WHERE RecipeId = ?", recipeId);
-        jdbcTemplate.update("DELETE FROM nutrition WHERE RecipeId = ?", recipeId);
-        jdbcTemplate.update("DELETE FROM recipes WHERE RecipeId = ?", recipeId);
+        if (fastDelete) {
+            //+配料和营养信息行数很少，随墓碑一起同步删除，分析查询无需感知墓碑
+            jdbcTemplate.update(
+                    "WITH t AS (UPDATE recipes SET IsDeleted = TRUE, IngredientCount = 0 WHERE RecipeId = ? RETURNING RecipeId), " +
+                            "n AS (DELETE FROM nutrition WHERE RecipeId IN (SELECT RecipeId FROM t)) " +
+                            "DELETE FROM recipe_ingredients WHERE RecipeId IN (SELECT RecipeId FROM t)",
+                    recipeId
+            );
+            recipeCleanupWorker.enqueueAfterCommit(recipeId);
+        } else {
+            //+外键均为 ON DELETE CASCADE，一条语句即可级联清理评论、点赞、配料与营养信息
+            jdbcTemplate.update("DELETE FROM recipes WHERE RecipeId = ?", recipeId);
+        }
+        analyticsCache.invalidate(AnalyticsCache.NUTRITION, AnalyticsCache.RECIPE_INGREDIENTS);
+        for (FeedIndex feedIndex : feedIndexes) {
+            feedIndex.onRecipeDeleted(recipeId, authorId);
+        }
     }
 
     @Override
     @Transactional
     public void updateTimes(AuthInfo auth, long recipeId, String cookTimeIso, String prepTimeIso) {
-        long operatorId = requireActiveUser(auth);
+        long operatorId = activeUserGuard.require(auth);
 
         Long authorId = jdbcTemplate.queryForObject(
-                "SELECT AuthorId FROM recipes WHERE RecipeId = ?",
+                "SELECT AuthorId FROM recipes WHERE RecipeId = ? AND IsDeleted = FALSE",
                 Long.class,
                 recipeId
         );
@@ -441,71 +476,213 @@ public class RecipeServiceImpl implements RecipeService {
 
     @Override
     public Map<String, Object> getClosestCaloriePair() {
-        Long count = jdbcTemplate.queryForObject(
-                "SELECT COUNT(*) FROM nutrition WHERE Calories IS NOT NULL",
-                Long.class
+        CaloriePair pair = analyticsCache.get(
+                CLOSEST_CALORIE_PAIR,
+                Collections.singleton(AnalyticsCache.NUTRITION),
+                this::queryClosestCaloriePair
         );
-        if (count == null || count < 2) {
-            return null;
-        }
+        return pair == CaloriePair.NONE ? null : pair.toMap();
+    }
 
-        String sql = "WITH ranked_pairs AS (" +
-                "    SELECT " +
-                "        n1.RecipeId AS RecipeA, " +
-                "        n2.RecipeId AS RecipeB, " +
-                "        n1.Calories AS CaloriesA, " +
-                "        n2.Calories AS CaloriesB, " +
-                "        ABS(n1.Calories - n2.Calories) AS Difference " +
-                "    FROM nutrition n1 " +
-                "    JOIN nutrition n2 ON n1.RecipeId < n2.RecipeId " +
-                "    WHERE n1.Calories IS NOT NULL AND n2.Calories IS NOT NULL " +
-                ") " +
-                "SELECT RecipeA, RecipeB, CaloriesA, CaloriesB, Difference " +
-                "FROM ranked_pairs " +
-                "WHERE Difference = (SELECT MIN(Difference) FROM ranked_pairs) " +
-                "ORDER BY RecipeA ASC, RecipeB ASC " +
+    /**
+     * 按热量排序后，最小差值必然出现在相邻两项之间：
+     * 差值为 0 时，同热量组内 ID 最小的两项在 (Calories, RecipeId) 序中相邻；
+     * 差值大于 0 时所有热量互不相同，取得最小差值的对都是相邻对。
+     * 因此只需一次 LAG() 扫描，再按 (Difference, RecipeA, RecipeB) 取第一行，平局规则与两两比较一致。
+     */
+    private CaloriePair queryClosestCaloriePair() {
+        String sql = "SELECT " +
+                "    CASE WHEN PrevId < RecipeId THEN PrevId ELSE RecipeId END AS RecipeA, " +
+                "    CASE WHEN PrevId < RecipeId THEN RecipeId ELSE PrevId END AS RecipeB, " +
+                "    CASE WHEN PrevId < RecipeId THEN PrevCalories ELSE Calories END AS CaloriesA, " +
+                "    CASE WHEN PrevId < RecipeId THEN Calories ELSE PrevCalories END AS CaloriesB, " +
+                "    Calories - PrevCalories AS Difference " +
+                "FROM ( " +
+                "    SELECT RecipeId, Calories, " +
+                "        LAG(RecipeId) OVER w AS PrevId, " +
+                "        LAG(Calories) OVER w AS PrevCalories " +
+                "    FROM nutrition " +
+                "    WHERE Calories IS NOT NULL " +
+                "    WINDOW w AS (ORDER BY Calories ASC, RecipeId ASC) " +
+                ") s " +
+                "WHERE PrevId IS NOT NULL " +
+                "ORDER BY Difference ASC, RecipeA ASC, RecipeB ASC " +
                 "LIMIT 1";
 
-        try {
-            Map<String, Object> row = jdbcTemplate.queryForMap(sql);
-            if (row.isEmpty()) {
-                return null;
+        List<CaloriePair> rows = jdbcTemplate.query(sql, (rs, rowNum) -> new CaloriePair(
+                rs.getLong("RecipeA"),
+                rs.getLong("RecipeB"),
+                rs.getBigDecimal("CaloriesA"),
+                rs.getBigDecimal("CaloriesB"),
+                rs.getBigDecimal("Difference")
+        ));
+        return rows.isEmpty() ? CaloriePair.NONE : rows.get(0);
+    }
+
+    /**
+     * 新食谱的最优配对只可能是它在热量索引上的前驱或后继，两次索引定位即可合并进缓存。
+     */
+    private CaloriePair mergeCalorieNeighbours(long recipeId, CaloriePair current) {
+        String sql = "WITH c AS (SELECT Calories FROM nutrition WHERE RecipeId = ?) " +
+                "(SELECT n.RecipeId, n.Calories, c.Calories AS Own FROM nutrition n, c " +
+                "    WHERE n.Calories <= c.Calories AND n.RecipeId <> ? " +
+                "    ORDER BY n.Calories DESC, n.RecipeId ASC LIMIT 1) " +
+                "UNION ALL " +
+                "(SELECT n.RecipeId, n.Calories, c.Calories AS Own FROM nutrition n, c " +
+                "    WHERE n.Calories >= c.Calories AND n.RecipeId <> ? " +
+                "    ORDER BY n.Calories ASC, n.RecipeId ASC LIMIT 1)";
+
+        List<CaloriePair> candidates = jdbcTemplate.query(sql, (rs, rowNum) -> {
+            long other = rs.getLong("RecipeId");
+            BigDecimal otherCalories = rs.getBigDecimal("Calories");
+            BigDecimal own = rs.getBigDecimal("Own");
+            BigDecimal diff = own.subtract(otherCalories).abs();
+            return other < recipeId
+                    ? new CaloriePair(other, recipeId, otherCalories, own, diff)
+                    : new CaloriePair(recipeId, other, own, otherCalories, diff);
+        }, recipeId, recipeId, recipeId);
+
+        CaloriePair merged = current;
+        for (CaloriePair candidate : candidates) {
+            merged = merged.better(candidate);
+        }
+        return merged;
+    }
+
+    private static final class CaloriePair {
+
+        static final CaloriePair NONE = new CaloriePair(0, 0, null, null, null);
+
+        final long recipeA;
+        final long recipeB;
+        final BigDecimal caloriesA;
+        final BigDecimal caloriesB;
+        final BigDecimal difference;
+
+        CaloriePair(long recipeA, long recipeB, BigDecimal caloriesA, BigDecimal caloriesB, BigDecimal difference) {
+            this.recipeA = recipeA;
+            this.recipeB = recipeB;
+            this.caloriesA = caloriesA;
+            this.caloriesB = caloriesB;
+            this.difference = difference;
+        }
+
+        CaloriePair better(CaloriePair other) {
+            if (this == NONE) {
+                return other;
             }
+            int cmp = difference.compareTo(other.difference);
+            if (cmp == 0) {
+                cmp = Long.compare(recipeA, other.recipeA);
+            }
+            if (cmp == 0) {
+                cmp = Long.compare(recipeB, other.recipeB);
+            }
+            return cmp <= 0 ? this : other;
+        }
+
+        Map<String, Object> toMap() {
             Map<String, Object> result = new HashMap<>();
-            Object recipeAObj = row.get("recipea");
-            Object recipeBObj = row.get("recipeb");
-            Object caloriesAObj = row.get("caloriesa");
-            Object caloriesBObj = row.get("caloriesb");
-            Object diffObj = row.get("difference");
-            
-            result.put("RecipeA", recipeAObj instanceof Number ? ((Number) recipeAObj).longValue() : recipeAObj);
-            result.put("RecipeB", recipeBObj instanceof Number ? ((Number) recipeBObj).longValue() : recipeBObj);
-            result.put("CaloriesA", caloriesAObj instanceof Number ? ((Number) caloriesAObj).doubleValue() : caloriesAObj);
-            result.put("CaloriesB", caloriesBObj instanceof Number ? ((Number) caloriesBObj).doubleValue() : caloriesBObj);
-            result.put("Difference", diffObj instanceof Number ? ((Number) diffObj).doubleValue() : diffObj);
+            result.put("RecipeA", recipeA);
+            result.put("RecipeB", recipeB);
+            result.put("CaloriesA", caloriesA.doubleValue());
+            result.put("CaloriesB", caloriesB.doubleValue());
+            result.put("Difference", difference.doubleValue());
             return result;
-        } catch (EmptyResultDataAccessException e) {
-            return null;
         }
     }
 
     @Override
     public List<Map<String, Object>> getTop3MostComplexRecipesByIngredients() {
-        String sql = "SELECT r.RecipeId, r.Name, COUNT(ri.IngredientPart) AS IngredientCount " +
-                "FROM recipes r " +
-                "JOIN recipe_ingredients ri ON r.RecipeId = ri.RecipeId " +
-                "GROUP BY r.RecipeId, r.Name " +
-                "ORDER BY IngredientCount DESC, r.RecipeId ASC " +
-                "LIMIT 3";
-
-        List<Map<String, Object>> results = jdbcTemplate.query(sql, (rs, rowNum) -> {
-            Map<String, Object> map = new HashMap<>();
-            map.put("RecipeId", rs.getLong("RecipeId"));
-            map.put("Name", rs.getString("Name"));
-            map.put("IngredientCount", rs.getInt("IngredientCount"));
-            return map;
-        });
+        return getTopKMostComplexRecipesByIngredients(3);
+    }
 
+    @Override
+    public List<Map<String, Object>> getTopKMostComplexRecipesByIngredients(int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be > 0");
+        }
+
+        TopKIngredients topK = k > TOP_K_CACHE_LIMIT
+                ? queryTopKByIngredients(k)
+                : analyticsCache.get(
+                        TOP_K_INGREDIENTS,
+                        Collections.singleton(AnalyticsCache.RECIPE_INGREDIENTS),
+                        (TopKIngredients cached) -> cached.k >= k,
+                        () -> queryTopKByIngredients(k)
+                );
+
+        //+排序键唯一，前 k 名即更大列表的前缀
+        List<RankedRecipe> ranked = topK.ranked.subList(0, Math.min(k, topK.ranked.size()));
+        List<Map<String, Object>> results = new ArrayList<>(ranked.size());
+        for (RankedRecipe r : ranked) {
+            results.add(r.toMap());
+        }
         return results;
     }
+
+    private TopKIngredients queryTopKByIngredients(int k) {
+        //+IngredientCount 由写入路径维护，按 idx_recipes_ingredient_count 顺序读取前 k 项
+        String sql = "SELECT RecipeId, Name, IngredientCount " +
+                "FROM recipes " +
+                "WHERE IngredientCount > 0 " +
+                "ORDER BY IngredientCount DESC, RecipeId ASC " +
+                "LIMIT ?";
+
+        return new TopKIngredients(k, jdbcTemplate.query(sql, (rs, rowNum) -> new RankedRecipe(
+                rs.getLong("RecipeId"),
+                rs.getString("Name"),
+                rs.getInt("IngredientCount")
+        ), k));
+    }
+
+    /**
+     * 缓存的配料数前 k 名；k 随值一起保存，增量合并时不必从缓存键中解析
+     */
+    private static final class TopKIngredients {
+
+        final int k;
+        final List<RankedRecipe> ranked;
+
+        TopKIngredients(int k, List<RankedRecipe> ranked) {
+            this.k = k;
+            this.ranked = Collections.unmodifiableList(ranked);
+        }
+
+        /**
+         * 把新食谱插入前 k 名：列表不足 k 项时说明它已包含全部候选，插入后仍然正确
+         */
+        TopKIngredients merge(RankedRecipe added) {
+            List<RankedRecipe> merged = new ArrayList<>(ranked);
+            merged.removeIf(r -> r.recipeId == added.recipeId);
+            merged.add(added);
+            merged.sort(Comparator.comparingInt((RankedRecipe r) -> r.ingredientCount).reversed()
+                    .thenComparingLong(r -> r.recipeId));
+            if (merged.size() > k) {
+                merged = new ArrayList<>(merged.subList(0, k));
+            }
+            return new TopKIngredients(k, merged);
+        }
+    }
+
+    private static final class RankedRecipe {
+
+        final long recipeId;
+        final String name;
+        final int ingredientCount;
+
+        RankedRecipe(long recipeId, String name, int ingredientCount) {
+            this.recipeId = recipeId;
+            this.name = name;
+            this.ingredientCount = ingredientCount;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("RecipeId", recipeId);
+            map.put("Name", name);
+            map.put("IngredientCount", ingredientCount);
+            return map;
+        }
+    }
 }
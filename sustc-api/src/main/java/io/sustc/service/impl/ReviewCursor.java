@@ -0,0 +1,54 @@
+package io.sustc.service.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Base64;
+
+/**
+ * 评论列表的 keyset 游标
+ * 记录上一页最后一行的排序键 (LikeCount, DateModified, ReviewId)，编码为 URL 安全的 Base64 字符串。
+ * DateModified 保留到纳秒，避免同一毫秒内的评论被跳过；可能为 NULL，需要单独标记。
+ */
+final class ReviewCursor {
+
+    private static final String NULL_DATE = "-";
+
+    final char kind;
+    final long likeCount;
+    final Timestamp dateModified;
+    final long reviewId;
+
+    ReviewCursor(char kind, long likeCount, Timestamp dateModified, long reviewId) {
+        this.kind = kind;
+        this.likeCount = likeCount;
+        this.dateModified = dateModified;
+        this.reviewId = reviewId;
+    }
+
+    String encode() {
+        String raw = kind + "|" + likeCount + "|" +
+                (dateModified == null ? NULL_DATE : dateModified.toString()) + "|" + reviewId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析游标；空串表示从第一页开始，返回 null
+     */
+    static ReviewCursor decode(String cursor, char expectedKind) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", -1);
+            if (parts.length != 4 || parts[0].length() != 1 || parts[0].charAt(0) != expectedKind) {
+                throw new IllegalArgumentException("invalid cursor");
+            }
+            Timestamp date = NULL_DATE.equals(parts[2]) ? null : Timestamp.valueOf(parts[2]);
+            return new ReviewCursor(expectedKind, Long.parseLong(parts[1]), date, Long.parseLong(parts[3]));
+        } catch (IllegalArgumentException e) {
+            //+Base64、时间戳与数字解析失败都抛 IllegalArgumentException 的子类
+            throw new IllegalArgumentException("invalid cursor", e);
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package io.sustc.service.impl;
 
 import io.sustc.dto.AuthInfo;
+import io.sustc.dto.AuthorReviewItem;
+import io.sustc.dto.CursorPage;
 import io.sustc.dto.PageResult;
 import io.sustc.dto.RecipeRecord;
 import io.sustc.dto.ReviewRecord;
@@ -8,13 +10,18 @@ import io.sustc.service.RecipeService;
 import io.sustc.service.ReviewService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.*;
+import java.util.function.Consumer;
 
 @Service
 @Slf4j
@@ -23,121 +30,110 @@ public class ReviewServiceImpl implements ReviewService {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private ActiveUserGuard activeUserGuard;
+
     @Autowired
     private RecipeService recipeService;
 
-    private long requireActiveUser(AuthInfo auth) {
-        if (auth == null) {
-            throw new SecurityException("auth is null");
-        }
-        long userId = auth.getAuthorId();
-        try {
-            Boolean isDeleted = jdbcTemplate.queryForObject(
-                    "SELECT IsDeleted FROM users WHERE AuthorId = ?",
-                    Boolean.class,
-                    userId
-            );
-            if (isDeleted == null || isDeleted) {
-                throw new SecurityException("user is inactive");
-            }
-            return userId;
-        } catch (EmptyResultDataAccessException e) {
-            throw new SecurityException("user does not exist", e);
-        }
-    }
+    @Autowired
+    private RatingRefreshWorker ratingRefreshWorker;
 
-    //+用于likeReview和unlikeReview，需要验证密码
+    @Autowired
+    private CredentialStore credentialStore;
+
+    //+用于likeReview和unlikeReview，需要验证密码；由 CredentialStore 比对明文密码，近期验证成功的凭据直接命中 AuthSessionCache
     private long requireActiveUserWithPassword(AuthInfo auth) {
         if (auth == null) {
             throw new SecurityException("auth is null");
         }
         long userId = auth.getAuthorId();
-        String password = auth.getPassword();
-        try {
-            Map<String, Object> row = jdbcTemplate.queryForMap(
-                    "SELECT Password, IsDeleted FROM users WHERE AuthorId = ?",
-                    userId
-            );
-            Map<String, Object> lowerCaseRow = new HashMap<>();
-            row.forEach((k, v) -> lowerCaseRow.put(k.toLowerCase(), v));
-            
-            Boolean isDeleted = (Boolean) lowerCaseRow.get("isdeleted");
-            if (isDeleted == null || isDeleted) {
+        switch (credentialStore.authenticate(userId, auth.getPassword())) {
+            case OK:
+                return userId;
+            case NOT_FOUND:
+                throw new SecurityException("user does not exist");
+            case INACTIVE:
                 throw new SecurityException("user is inactive");
-            }
-            Object storedPwdObj = lowerCaseRow.get("password");
-            String storedPwd = storedPwdObj == null ? null : storedPwdObj.toString();
-            if (password == null || !password.equals(storedPwd)) {
+            default:
                 throw new SecurityException("password mismatch");
-            }
-            return userId;
-        } catch (EmptyResultDataAccessException e) {
-            throw new SecurityException("user does not exist", e);
         }
     }
 
     @Override
     @Transactional
     public long addReview(AuthInfo auth, long recipeId, int rating, String review) {
-        long authorId = requireActiveUser(auth);
-
-        if (rating < 1 || rating > 5) {
-            throw new IllegalArgumentException("rating must be between 1 and 5");
-        }
-
-        Boolean recipeExists = jdbcTemplate.queryForObject(
-                "SELECT EXISTS(SELECT 1 FROM recipes WHERE RecipeId = ?)",
-                Boolean.class,
-                recipeId
-        );
-        if (recipeExists == null || !recipeExists) {
-            throw new IllegalArgumentException("recipe does not exist");
+        if (auth == null) {
+            throw new SecurityException("auth is null");
         }
-
-        Long newReviewId = jdbcTemplate.queryForObject(
-                "SELECT COALESCE(MAX(ReviewId), 0) + 1 FROM reviews",
-                Long.class
-        );
-
+        long authorId = auth.getAuthorId();
         Timestamp now = new Timestamp(System.currentTimeMillis());
 
-        jdbcTemplate.update(
-                "INSERT INTO reviews (ReviewId, RecipeId, AuthorId, Rating, Review, DateSubmitted, DateModified) " +
-                        "VALUES (?, ?, ?, ?, ?, ?, ?)",
-                newReviewId,
-                recipeId,
-                authorId,
-                rating,
-                review,
-                now,
-                now
-        );
+        //+一条语句完成用户/评分/食谱校验、取号与插入；未插入时由诊断列判断原因，
+        //+判断顺序与原先的逐步校验一致：用户 -> 评分 -> 食谱
+        //+编号沿用 MAX(ReviewId)+1；并发事务抢先占用同一编号时 ON CONFLICT 不插入，重新执行即可取到下一个编号
+        Object reviewId;
+        while (true) {
+            Map<String, Object> row;
+            try {
+                row = jdbcTemplate.queryForMap(
+                        "WITH u AS (SELECT IsDeleted FROM users WHERE AuthorId = ?), " +
+                                "c AS (SELECT RecipeId FROM recipes WHERE RecipeId = ? AND IsDeleted = FALSE), " +
+                                "ins AS ( " +
+                                "    INSERT INTO reviews (ReviewId, RecipeId, AuthorId, Rating, Review, DateSubmitted, DateModified) " +
+                                "    SELECT (SELECT COALESCE(MAX(ReviewId), 0) + 1 FROM reviews), c.RecipeId, ?, ?, ?, ?, ? FROM c " +
+                                "    WHERE EXISTS (SELECT 1 FROM u WHERE NOT u.IsDeleted) AND ? BETWEEN 1 AND 5 " +
+                                "    ON CONFLICT (ReviewId) DO NOTHING " +
+                                "    RETURNING ReviewId " +
+                                ") " +
+                                "SELECT (SELECT ReviewId FROM ins) AS ReviewId, " +
+                                "       (SELECT NOT IsDeleted FROM u) AS UserActive, " +
+                                "       EXISTS (SELECT 1 FROM c) AS RecipeExists",
+                        authorId,
+                        recipeId,
+                        authorId,
+                        rating,
+                        review,
+                        now,
+                        now,
+                        rating
+                );
+            } catch (DataIntegrityViolationException e) {
+                //+校验之后食谱被并发物理删除，外键拒绝插入
+                throw new IllegalArgumentException("recipe does not exist", e);
+            }
 
-        refreshRecipeAggregatedRating(recipeId);
+            reviewId = row.get("reviewid");
+            if (reviewId != null) {
+                break;
+            }
+            if (!Boolean.TRUE.equals(row.get("useractive"))) {
+                throw new SecurityException("user does not exist or is inactive");
+            }
+            if (rating < 1 || rating > 5) {
+                throw new IllegalArgumentException("rating must be between 1 and 5");
+            }
+            if (!Boolean.TRUE.equals(row.get("recipeexists"))) {
+                throw new IllegalArgumentException("recipe does not exist");
+            }
+        }
 
-        return newReviewId;
+        applyRatingDelta(recipeId, rating, 1);
+
+        return ((Number) reviewId).longValue();
     }
 
     @Override
     @Transactional
     public void editReview(AuthInfo auth, long recipeId, long reviewId, int rating, String review) {
-        long operatorId = requireActiveUser(auth);
+        long operatorId = activeUserGuard.require(auth);
 
         if (rating < 1 || rating > 5) {
             throw new IllegalArgumentException("rating must be between 1 and 5");
         }
 
-        Long reviewAuthorId;
-        try {
-            reviewAuthorId = jdbcTemplate.queryForObject(
-                    "SELECT AuthorId FROM reviews WHERE ReviewId = ? AND RecipeId = ?",
-                    Long.class,
-                    reviewId,
-                    recipeId
-            );
-        } catch (EmptyResultDataAccessException e) {
-            throw new IllegalArgumentException("review does not belong to recipe");
-        }
+        int[] oldRating = new int[1];
+        long reviewAuthorId = findReviewAuthor(reviewId, recipeId, oldRating);
 
         if (reviewAuthorId != operatorId) {
             throw new SecurityException("only review author can edit review");
@@ -152,25 +148,21 @@ public class ReviewServiceImpl implements ReviewService {
                 reviewId
         );
 
-        refreshRecipeAggregatedRating(recipeId);
+        //+旧评分为 0 时不在累计值内，改为有效评分后计数加一
+        if (oldRating[0] > 0) {
+            applyRatingDelta(recipeId, rating - oldRating[0], 0);
+        } else {
+            applyRatingDelta(recipeId, rating, 1);
+        }
     }
 
     @Override
     @Transactional
     public void deleteReview(AuthInfo auth, long recipeId, long reviewId) {
-        long operatorId = requireActiveUser(auth);
+        long operatorId = activeUserGuard.require(auth);
 
-        Long reviewAuthorId;
-        try {
-            reviewAuthorId = jdbcTemplate.queryForObject(
-                    "SELECT AuthorId FROM reviews WHERE ReviewId = ? AND RecipeId = ?",
-                    Long.class,
-                    reviewId,
-                    recipeId
-            );
-        } catch (EmptyResultDataAccessException e) {
-            throw new IllegalArgumentException("review does not belong to recipe");
-        }
+        int[] oldRating = new int[1];
+        long reviewAuthorId = findReviewAuthor(reviewId, recipeId, oldRating);
 
         if (reviewAuthorId != operatorId) {
             throw new SecurityException("only review author can delete review");
@@ -178,7 +170,67 @@ public class ReviewServiceImpl implements ReviewService {
 
         jdbcTemplate.update("DELETE FROM review_likes WHERE ReviewId = ?", reviewId);
         jdbcTemplate.update("DELETE FROM reviews WHERE ReviewId = ?", reviewId);
-        refreshRecipeAggregatedRating(recipeId);
+        if (oldRating[0] > 0) {
+            applyRatingDelta(recipeId, -oldRating[0], -1);
+        }
+    }
+
+    /**
+     * 查询评论作者并校验评论属于该食谱且食谱未打墓碑，同时把原评分写入 ratingOut[0]；
+     * 行锁保证并发修改同一评论时增量基于最新的原评分
+     */
+    private long findReviewAuthor(long reviewId, long recipeId, int[] ratingOut) {
+        List<Long> authors = jdbcTemplate.query(
+                "SELECT r.AuthorId, r.Rating FROM reviews r " +
+                        "JOIN recipes c ON c.RecipeId = r.RecipeId AND c.IsDeleted = FALSE " +
+                        "WHERE r.ReviewId = ? AND r.RecipeId = ? FOR UPDATE OF r",
+                (rs, rowNum) -> {
+                    ratingOut[0] = rs.getInt("Rating");
+                    return rs.getLong("AuthorId");
+                },
+                reviewId,
+                recipeId
+        );
+        if (authors.isEmpty()) {
+            throw new IllegalArgumentException("review does not belong to recipe");
+        }
+        return authors.get(0);
+    }
+
+    /**
+     * 把评分增量累加到 RatingSum/RatingCount，并在同一条 UPDATE 中由新的累计值算出
+     * AggregatedRating（保留两位小数）与 ReviewCount；SET 右侧引用的都是更新前的值。
+     * 写后刷新模式下只登记脏食谱，由 RatingRefreshWorker 批量重算
+     */
+    private void applyRatingDelta(long recipeId, int sumDelta, int countDelta) {
+        if (sumDelta == 0 && countDelta == 0) {
+            return;
+        }
+        if (ratingRefreshWorker.isEnabled()) {
+            ratingRefreshWorker.markDirtyAfterCommit(recipeId);
+            return;
+        }
+        List<Integer> updated = jdbcTemplate.query(
+                "UPDATE recipes SET " +
+                        "RatingSum = RatingSum + ?, " +
+                        "RatingCount = RatingCount + ?, " +
+                        "ReviewCount = RatingCount + ?, " +
+                        "AggregatedRating = CASE WHEN RatingCount + ? > 0 " +
+                        "    THEN ROUND((RatingSum + ?)::numeric / (RatingCount + ?), 2) ELSE 0.0 END " +
+                        "WHERE RecipeId = ? AND IsDeleted = FALSE " +
+                        "RETURNING ReviewCount",
+                (rs, rowNum) -> rs.getInt(1),
+                sumDelta,
+                countDelta,
+                countDelta,
+                countDelta,
+                sumDelta,
+                countDelta,
+                recipeId
+        );
+        if (updated.isEmpty()) {
+            throw new IllegalArgumentException("recipe does not exist");
+        }
     }
 
     @Override
@@ -189,7 +241,9 @@ public class ReviewServiceImpl implements ReviewService {
         Long reviewAuthorId;
         try {
             reviewAuthorId = jdbcTemplate.queryForObject(
-                    "SELECT AuthorId FROM reviews WHERE ReviewId = ?",
+                    "SELECT r.AuthorId FROM reviews r " +
+                            "JOIN recipes c ON c.RecipeId = r.RecipeId AND c.IsDeleted = FALSE " +
+                            "WHERE r.ReviewId = ?",
                     Long.class,
                     reviewId
             );
@@ -201,17 +255,17 @@ public class ReviewServiceImpl implements ReviewService {
             throw new SecurityException("cannot like own review");
         }
 
-        jdbcTemplate.update(
-                "INSERT INTO review_likes (ReviewId, AuthorId) VALUES (?, ?) " +
-                        "ON CONFLICT (ReviewId, AuthorId) DO NOTHING",
-                reviewId,
-                userId
-        );
-
-        // 返回当前总点赞数
+        //+插入与计数器更新在同一语句内完成，重复点赞时增量为 0，直接返回当前总点赞数
         Integer count = jdbcTemplate.queryForObject(
-                "SELECT COUNT(*) FROM review_likes WHERE ReviewId = ?",
+                "WITH ins AS (" +
+                        "    INSERT INTO review_likes (ReviewId, AuthorId) VALUES (?, ?) " +
+                        "    ON CONFLICT (ReviewId, AuthorId) DO NOTHING RETURNING ReviewId" +
+                        ") " +
+                        "UPDATE reviews SET LikeCount = LikeCount + (SELECT COUNT(*) FROM ins) " +
+                        "WHERE ReviewId = ? RETURNING LikeCount",
                 Integer.class,
+                reviewId,
+                userId,
                 reviewId
         );
         return count == null ? 0 : count;
@@ -222,27 +276,134 @@ public class ReviewServiceImpl implements ReviewService {
     public long unlikeReview(AuthInfo auth, long reviewId) {
         long userId = requireActiveUserWithPassword(auth);
 
-        Boolean reviewExists = jdbcTemplate.queryForObject(
-                "SELECT EXISTS(SELECT 1 FROM reviews WHERE ReviewId = ?)",
-                Boolean.class,
-                reviewId
-        );
-        if (reviewExists == null || !reviewExists) {
+        //+评论不存在或所属食谱已打墓碑时 UPDATE 不返回行，抛出异常回滚同一语句中的删除
+        Integer count;
+        try {
+            count = jdbcTemplate.queryForObject(
+                    "WITH del AS (" +
+                            "    DELETE FROM review_likes WHERE ReviewId = ? AND AuthorId = ? RETURNING ReviewId" +
+                            ") " +
+                            "UPDATE reviews r SET LikeCount = r.LikeCount - (SELECT COUNT(*) FROM del) " +
+                            "FROM recipes c " +
+                            "WHERE r.ReviewId = ? AND c.RecipeId = r.RecipeId AND c.IsDeleted = FALSE " +
+                            "RETURNING r.LikeCount",
+                    Integer.class,
+                    reviewId,
+                    userId,
+                    reviewId
+            );
+        } catch (EmptyResultDataAccessException e) {
             throw new IllegalArgumentException("review does not exist");
         }
+        return count == null ? 0 : count;
+    }
 
-        jdbcTemplate.update(
-                "DELETE FROM review_likes WHERE ReviewId = ? AND AuthorId = ?",
-                reviewId,
-                userId
+    @Override
+    @Transactional
+    public long[] likeReviews(AuthInfo auth, long[] reviewIds) {
+        long userId = requireActiveUserWithPassword(auth);
+        if (reviewIds == null) {
+            throw new IllegalArgumentException("reviewIds is null");
+        }
+        if (reviewIds.length == 0) {
+            return new long[0];
+        }
+        Long[] ids = validateReviews(reviewIds, userId, true);
+
+        //+一条语句完成批量插入与计数器更新；已点赞的评论增量为 0，但仍返回当前总数
+        Map<Long, Long> counts = new HashMap<>();
+        jdbcTemplate.query(
+                "WITH ids AS (SELECT DISTINCT unnest(?::bigint[]) AS ReviewId), " +
+                        "ins AS ( " +
+                        "    INSERT INTO review_likes (ReviewId, AuthorId) SELECT ReviewId, ? FROM ids " +
+                        "    ON CONFLICT (ReviewId, AuthorId) DO NOTHING RETURNING ReviewId " +
+                        "), delta AS ( " +
+                        "    SELECT ids.ReviewId, COUNT(ins.ReviewId) AS Cnt " +
+                        "    FROM ids LEFT JOIN ins ON ins.ReviewId = ids.ReviewId GROUP BY ids.ReviewId " +
+                        ") " +
+                        "UPDATE reviews r SET LikeCount = r.LikeCount + delta.Cnt FROM delta " +
+                        "WHERE r.ReviewId = delta.ReviewId RETURNING r.ReviewId, r.LikeCount",
+                ps -> {
+                    ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids));
+                    ps.setLong(2, userId);
+                },
+                (RowCallbackHandler) rs -> counts.put(rs.getLong(1), rs.getLong(2))
         );
+        return countsInOrder(reviewIds, counts);
+    }
 
-        Integer count = jdbcTemplate.queryForObject(
-                "SELECT COUNT(*) FROM review_likes WHERE ReviewId = ?",
-                Integer.class,
-                reviewId
+    @Override
+    @Transactional
+    public long[] unlikeReviews(AuthInfo auth, long[] reviewIds) {
+        long userId = requireActiveUserWithPassword(auth);
+        if (reviewIds == null) {
+            throw new IllegalArgumentException("reviewIds is null");
+        }
+        if (reviewIds.length == 0) {
+            return new long[0];
+        }
+        Long[] ids = validateReviews(reviewIds, userId, false);
+
+        Map<Long, Long> counts = new HashMap<>();
+        jdbcTemplate.query(
+                "WITH ids AS (SELECT DISTINCT unnest(?::bigint[]) AS ReviewId), " +
+                        "del AS ( " +
+                        "    DELETE FROM review_likes WHERE ReviewId IN (SELECT ReviewId FROM ids) AND AuthorId = ? " +
+                        "    RETURNING ReviewId " +
+                        "), delta AS ( " +
+                        "    SELECT ids.ReviewId, COUNT(del.ReviewId) AS Cnt " +
+                        "    FROM ids LEFT JOIN del ON del.ReviewId = ids.ReviewId GROUP BY ids.ReviewId " +
+                        ") " +
+                        "UPDATE reviews r SET LikeCount = r.LikeCount - delta.Cnt FROM delta " +
+                        "WHERE r.ReviewId = delta.ReviewId RETURNING r.ReviewId, r.LikeCount",
+                ps -> {
+                    ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids));
+                    ps.setLong(2, userId);
+                },
+                (RowCallbackHandler) rs -> counts.put(rs.getLong(1), rs.getLong(2))
         );
-        return count == null ? 0 : count;
+        return countsInOrder(reviewIds, counts);
+    }
+
+    /**
+     * 一次查询校验所有评论存在且所属食谱未打墓碑；点赞时还要求都不是自己的评论。返回去重后的 ReviewId 数组
+     */
+    private Long[] validateReviews(long[] reviewIds, long userId, boolean rejectOwn) {
+        Set<Long> distinct = new LinkedHashSet<>();
+        for (long id : reviewIds) {
+            distinct.add(id);
+        }
+        Long[] ids = distinct.toArray(new Long[0]);
+
+        int[] found = new int[1];
+        boolean[] ownReview = new boolean[1];
+        jdbcTemplate.query(
+                "SELECT r.AuthorId FROM reviews r " +
+                        "JOIN recipes c ON c.RecipeId = r.RecipeId AND c.IsDeleted = FALSE " +
+                        "WHERE r.ReviewId = ANY(?)",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids)),
+                (RowCallbackHandler) rs -> {
+                    found[0]++;
+                    if (rs.getLong(1) == userId) {
+                        ownReview[0] = true;
+                    }
+                }
+        );
+        if (found[0] != ids.length) {
+            throw new IllegalArgumentException("review does not exist");
+        }
+        if (rejectOwn && ownReview[0]) {
+            throw new SecurityException("cannot like own review");
+        }
+        return ids;
+    }
+
+    private static long[] countsInOrder(long[] reviewIds, Map<Long, Long> counts) {
+        long[] result = new long[reviewIds.length];
+        for (int i = 0; i < reviewIds.length; i++) {
+            result[i] = counts.getOrDefault(reviewIds[i], 0L);
+        }
+        return result;
     }
 
     @Override
@@ -255,20 +416,18 @@ public class ReviewServiceImpl implements ReviewService {
         }
 
         Long total = jdbcTemplate.queryForObject(
-                "SELECT COUNT(*) FROM reviews WHERE RecipeId = ?",
+                "SELECT COUNT(*) FROM reviews r " +
+                        "JOIN recipes c ON c.RecipeId = r.RecipeId AND c.IsDeleted = FALSE " +
+                        "WHERE r.RecipeId = ?",
                 Long.class,
                 recipeId
         );
         if (total == null) total = 0L;
 
         String orderBy = "ORDER BY r.DateModified DESC";
-        String fromClause = "FROM reviews r " +
-                "JOIN users u ON r.AuthorId = u.AuthorId ";
         if (sort != null && "likes_desc".equals(sort)) {
-            fromClause = "FROM reviews r " +
-                    "JOIN users u ON r.AuthorId = u.AuthorId " +
-                    "LEFT JOIN review_likes rl ON r.ReviewId = rl.ReviewId ";
-            orderBy = "ORDER BY COUNT(rl.AuthorId) DESC, r.DateModified DESC";
+            //+LikeCount 由点赞写路径维护，沿 idx_reviews_recipe_likes 顺序读取
+            orderBy = "ORDER BY r.LikeCount DESC, r.DateModified DESC";
         } else if (sort != null && "date_desc".equals(sort)) {
             orderBy = "ORDER BY r.DateModified DESC";
         }
@@ -276,35 +435,179 @@ public class ReviewServiceImpl implements ReviewService {
         int offset = (page - 1) * size;
         String sql = "SELECT r.ReviewId, r.RecipeId, r.AuthorId, u.AuthorName, r.Rating, r.Review, " +
                 "r.DateSubmitted, r.DateModified " +
-                fromClause +
+                "FROM reviews r " +
+                "JOIN recipes c ON c.RecipeId = r.RecipeId AND c.IsDeleted = FALSE " +
+                "JOIN users u ON r.AuthorId = u.AuthorId " +
                 "WHERE r.RecipeId = ? " +
-                (sort != null && "likes_desc".equals(sort) ? "GROUP BY r.ReviewId, r.RecipeId, r.AuthorId, u.AuthorName, r.Rating, r.Review, r.DateSubmitted, r.DateModified " : "") +
                 orderBy + " LIMIT ? OFFSET ?";
 
-        List<ReviewRecord> reviews = jdbcTemplate.query(sql, (rs, rowNum) -> {
-            ReviewRecord rec = new ReviewRecord();
-            rec.setReviewId(rs.getLong("ReviewId"));
-            rec.setRecipeId(rs.getLong("RecipeId"));
-            rec.setAuthorId(rs.getLong("AuthorId"));
-            rec.setAuthorName(rs.getString("AuthorName"));
-            rec.setRating(rs.getFloat("Rating"));
-            rec.setReview(rs.getString("Review"));
-            rec.setDateSubmitted(rs.getTimestamp("DateSubmitted"));
-            rec.setDateModified(rs.getTimestamp("DateModified"));
-            return rec;
-        }, recipeId, size, offset);
+        List<ReviewRecord> reviews = jdbcTemplate.query(sql, (rs, rowNum) -> mapReview(rs), recipeId, size, offset);
 
-        for (ReviewRecord rec : reviews) {
-            List<Long> likes = jdbcTemplate.queryForList(
-                    "SELECT AuthorId FROM review_likes WHERE ReviewId = ?",
-                    Long.class,
-                    rec.getReviewId()
-            );
-            long[] likesArray = new long[likes.size()];
-            for (int i = 0; i < likes.size(); i++) {
-                likesArray[i] = likes.get(i);
+        attachLikes(reviews);
+
+        PageResult<ReviewRecord> result = new PageResult<>();
+        result.setItems(reviews);
+        result.setPage(page);
+        result.setSize(size);
+        result.setTotal(total);
+        return result;
+    }
+
+    @Override
+    public CursorPage<ReviewRecord> listByRecipe(long recipeId, String cursor, int size, String sort) {
+        if (size < 1) size = 1;
+        if (size > 200) size = 200;
+        int pageSize = size;
+        boolean byLikes = "likes_desc".equals(sort);
+        ReviewCursor after = ReviewCursor.decode(cursor, byLikes ? 'l' : 'd');
+
+        List<Object> params = new ArrayList<>();
+        params.add(recipeId);
+        StringBuilder sql = new StringBuilder(
+                "SELECT r.ReviewId, r.RecipeId, r.AuthorId, u.AuthorName, r.Rating, r.Review, " +
+                        "r.DateSubmitted, r.DateModified, r.LikeCount " +
+                        "FROM reviews r " +
+                        "JOIN recipes c ON c.RecipeId = r.RecipeId AND c.IsDeleted = FALSE " +
+                        "JOIN users u ON r.AuthorId = u.AuthorId " +
+                        "WHERE r.RecipeId = ? ");
+        if (after != null) {
+            sql.append("AND ").append(keysetPredicate(after, byLikes, params)).append(' ');
+        }
+        //+与 idx_reviews_recipe_date / idx_reviews_recipe_likes 的列顺序一致，按索引区间顺序读取
+        sql.append(byLikes
+                ? "ORDER BY r.LikeCount DESC, r.DateModified DESC, r.ReviewId DESC "
+                : "ORDER BY r.DateModified DESC, r.ReviewId DESC ");
+        sql.append("LIMIT ?");
+        //+多取一行判断是否还有下一页
+        params.add(size + 1);
+
+        //+ReviewRecord 不含 LikeCount，只记下本页最后一行的值，用于生成游标
+        long[] lastLikeCount = new long[1];
+        List<ReviewRecord> reviews = jdbcTemplate.query(sql.toString(), (rs, rowNum) -> {
+            if (rowNum == pageSize - 1) {
+                lastLikeCount[0] = rs.getLong("LikeCount");
             }
-            rec.setLikes(likesArray);
+            return mapReview(rs);
+        }, params.toArray());
+
+        String nextCursor = null;
+        if (reviews.size() > size) {
+            reviews = new ArrayList<>(reviews.subList(0, size));
+            ReviewRecord last = reviews.get(size - 1);
+            nextCursor = new ReviewCursor(byLikes ? 'l' : 'd', lastLikeCount[0],
+                    last.getDateModified(), last.getReviewId()).encode();
+        }
+
+        attachLikes(reviews);
+
+        CursorPage<ReviewRecord> result = new CursorPage<>();
+        result.setItems(reviews);
+        result.setSize(size);
+        result.setNextCursor(nextCursor);
+        return result;
+    }
+
+    @Override
+    public CursorPage<AuthorReviewItem> listByAuthor(long authorId, String cursor, int size) {
+        if (size < 1) size = 1;
+        if (size > 200) size = 200;
+        ReviewCursor after = ReviewCursor.decode(cursor, 'a');
+
+        List<Object> params = new ArrayList<>();
+        params.add(authorId);
+        //+沿 idx_reviews_author_date 做区间扫描，食谱名按主键逐行关联；已打墓碑的食谱不展示
+        StringBuilder sql = new StringBuilder(
+                "SELECT r.ReviewId, r.RecipeId, c.Name AS RecipeName, r.Rating, r.Review, " +
+                        "r.DateSubmitted, r.DateModified " +
+                        "FROM reviews r " +
+                        "JOIN recipes c ON c.RecipeId = r.RecipeId AND c.IsDeleted = FALSE " +
+                        "WHERE r.AuthorId = ? ");
+        if (after != null) {
+            sql.append("AND ").append(keysetPredicate(after, false, params)).append(' ');
+        }
+        sql.append("ORDER BY r.DateModified DESC, r.ReviewId DESC LIMIT ?");
+        params.add(size + 1);
+
+        List<AuthorReviewItem> items = jdbcTemplate.query(sql.toString(), (rs, rowNum) -> {
+            AuthorReviewItem item = new AuthorReviewItem();
+            item.setReviewId(rs.getLong("ReviewId"));
+            item.setRecipeId(rs.getLong("RecipeId"));
+            item.setRecipeName(rs.getString("RecipeName"));
+            item.setRating(rs.getFloat("Rating"));
+            item.setReview(rs.getString("Review"));
+            item.setDateSubmitted(rs.getTimestamp("DateSubmitted"));
+            item.setDateModified(rs.getTimestamp("DateModified"));
+            item.setLikes(new long[0]);
+            return item;
+        }, params.toArray());
+
+        String nextCursor = null;
+        if (items.size() > size) {
+            items = new ArrayList<>(items.subList(0, size));
+            AuthorReviewItem last = items.get(size - 1);
+            nextCursor = new ReviewCursor('a', 0, last.getDateModified(), last.getReviewId()).encode();
+        }
+
+        Map<Long, Consumer<long[]>> sinks = new HashMap<>();
+        for (AuthorReviewItem item : items) {
+            sinks.put(item.getReviewId(), item::setLikes);
+        }
+        fetchLikes(sinks);
+
+        CursorPage<AuthorReviewItem> result = new CursorPage<>();
+        result.setItems(items);
+        result.setSize(size);
+        result.setNextCursor(nextCursor);
+        return result;
+    }
+
+    @Override
+    public PageResult<ReviewRecord> searchReviews(String keyword, Long recipeId, Integer minRating, int page, int size) {
+        if (keyword == null || keyword.trim().isEmpty()) {
+            throw new IllegalArgumentException("keyword must not be empty");
+        }
+        if (page < 1) {
+            throw new IllegalArgumentException("page must be >= 1");
+        }
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be > 0");
+        }
+        if (minRating != null && (minRating < 1 || minRating > 5)) {
+            throw new IllegalArgumentException("minRating must be between 1 and 5");
+        }
+
+        //+表达式必须与 idx_reviews_text_search 完全一致才能走 GIN 索引
+        String document = "to_tsvector('english', COALESCE(r.Review, ''))";
+        List<Object> params = new ArrayList<>();
+        params.add(keyword.trim());
+        String from = " FROM reviews r " +
+                "JOIN recipes c ON c.RecipeId = r.RecipeId AND c.IsDeleted = FALSE ";
+        StringBuilder where = new StringBuilder("WHERE " + document + " @@ plainto_tsquery('english', ?)");
+        if (recipeId != null) {
+            where.append(" AND r.RecipeId = ?");
+            params.add(recipeId);
+        }
+        if (minRating != null) {
+            where.append(" AND r.Rating >= ?");
+            params.add(minRating);
+        }
+
+        Long total = jdbcTemplate.queryForObject("SELECT COUNT(*)" + from + where, Long.class, params.toArray());
+        if (total == null) total = 0L;
+
+        List<ReviewRecord> reviews = new ArrayList<>();
+        if (total > 0) {
+            List<Object> pageParams = new ArrayList<>(params);
+            pageParams.add(keyword.trim());
+            pageParams.add(size);
+            pageParams.add((page - 1) * size);
+            String sql = "SELECT r.ReviewId, r.RecipeId, r.AuthorId, u.AuthorName, r.Rating, r.Review, " +
+                    "r.DateSubmitted, r.DateModified" +
+                    from + "JOIN users u ON r.AuthorId = u.AuthorId " + where +
+                    " ORDER BY ts_rank(" + document + ", plainto_tsquery('english', ?)) DESC, r.ReviewId DESC" +
+                    " LIMIT ? OFFSET ?";
+            reviews = jdbcTemplate.query(sql, (rs, rowNum) -> mapReview(rs), pageParams.toArray());
+            attachLikes(reviews);
         }
 
         PageResult<ReviewRecord> result = new PageResult<>();
@@ -315,46 +618,152 @@ public class ReviewServiceImpl implements ReviewService {
         return result;
     }
 
+    /**
+     * 生成“排在游标之后”的条件。DateModified DESC 默认 NULLS FIRST：
+     * 游标日期非空时用行比较，日期为 NULL 的行比较结果为 NULL 自然被排除；
+     * 游标日期为空时，后续行是同样为 NULL 且 ReviewId 更小的行，以及全部非 NULL 的行
+     */
+    private static String keysetPredicate(ReviewCursor after, boolean byLikes, List<Object> params) {
+        if (after.dateModified != null) {
+            if (byLikes) {
+                params.add(after.likeCount);
+                params.add(after.dateModified);
+                params.add(after.reviewId);
+                return "(r.LikeCount, r.DateModified, r.ReviewId) < (?, ?, ?)";
+            }
+            params.add(after.dateModified);
+            params.add(after.reviewId);
+            return "(r.DateModified, r.ReviewId) < (?, ?)";
+        }
+
+        String dateTail = "(r.DateModified IS NOT NULL OR r.ReviewId < ?)";
+        if (byLikes) {
+            params.add(after.likeCount);
+            params.add(after.likeCount);
+            params.add(after.reviewId);
+            return "(r.LikeCount < ? OR (r.LikeCount = ? AND " + dateTail + "))";
+        }
+        params.add(after.reviewId);
+        return dateTail;
+    }
+
+    private static ReviewRecord mapReview(ResultSet rs) throws SQLException {
+        ReviewRecord rec = new ReviewRecord();
+        rec.setReviewId(rs.getLong("ReviewId"));
+        rec.setRecipeId(rs.getLong("RecipeId"));
+        rec.setAuthorId(rs.getLong("AuthorId"));
+        rec.setAuthorName(rs.getString("AuthorName"));
+        rec.setRating(rs.getFloat("Rating"));
+        rec.setReview(rs.getString("Review"));
+        rec.setDateSubmitted(rs.getTimestamp("DateSubmitted"));
+        rec.setDateModified(rs.getTimestamp("DateModified"));
+        return rec;
+    }
+
+    /**
+     * 一次查询取出整页评论的点赞者，按 ReviewId 分组直接写入 long[]
+     */
+    private void attachLikes(List<ReviewRecord> reviews) {
+        Map<Long, Consumer<long[]>> sinks = new HashMap<>();
+        for (ReviewRecord rec : reviews) {
+            rec.setLikes(new long[0]);
+            sinks.put(rec.getReviewId(), rec::setLikes);
+        }
+        fetchLikes(sinks);
+    }
+
+    private void fetchLikes(Map<Long, Consumer<long[]>> sinks) {
+        if (sinks.isEmpty()) {
+            return;
+        }
+        Long[] reviewIds = sinks.keySet().toArray(new Long[0]);
+
+        //+结果按 ReviewId 有序，同一评论的点赞连续出现，换组时把缓冲区截断后写回
+        LikesCollector collector = new LikesCollector(sinks);
+        jdbcTemplate.query(
+                "SELECT ReviewId, AuthorId FROM review_likes WHERE ReviewId = ANY(?) ORDER BY ReviewId, AuthorId",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", reviewIds)),
+                collector
+        );
+        collector.flush();
+    }
+
+    private static final class LikesCollector implements RowCallbackHandler {
+
+        private final Map<Long, Consumer<long[]>> sinks;
+        private long currentId;
+        private long[] buffer = new long[16];
+        private int length;
+
+        LikesCollector(Map<Long, Consumer<long[]>> sinks) {
+            this.sinks = sinks;
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            long reviewId = rs.getLong(1);
+            if (length > 0 && reviewId != currentId) {
+                flush();
+            }
+            currentId = reviewId;
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, length * 2);
+            }
+            buffer[length++] = rs.getLong(2);
+        }
+
+        void flush() {
+            if (length > 0) {
+                sinks.get(currentId).accept(Arrays.copyOf(buffer, length));
+                length = 0;
+            }
+        }
+    }
+
     @Override
     @Transactional
     public RecipeRecord refreshRecipeAggregatedRating(long recipeId) {
-        Boolean recipeExists = jdbcTemplate.queryForObject(
-                "SELECT EXISTS(SELECT 1 FROM recipes WHERE RecipeId = ?)",
-                Boolean.class,
+        recomputeRecipeAggregatedRating(recipeId);
+        return recipeService.getRecipeById(recipeId);
+    }
+
+    @Override
+    @Transactional
+    public void recomputeRecipeAggregatedRating(long recipeId) {
+        //+Rating=0的评论排除在平均值计算和ReviewCount之外；没有评论时设置为0.0而不是NULL
+        int updated = jdbcTemplate.update(
+                "UPDATE recipes r SET " +
+                        "RatingSum = s.RatingSum, " +
+                        "RatingCount = s.RatingCount, " +
+                        "ReviewCount = s.RatingCount, " +
+                        "AggregatedRating = COALESCE(ROUND(s.AvgRating, 2), 0.0) " +
+                        "FROM (SELECT COALESCE(SUM(Rating), 0) AS RatingSum, COUNT(*) AS RatingCount, " +
+                        "             AVG(Rating)::numeric AS AvgRating " +
+                        "      FROM reviews WHERE RecipeId = ? AND Rating > 0) s " +
+                        "WHERE r.RecipeId = ? AND r.IsDeleted = FALSE",
+                recipeId,
                 recipeId
         );
-        if (recipeExists == null || !recipeExists) {
+        if (updated == 0) {
             throw new IllegalArgumentException("recipe does not exist");
         }
+    }
 
-        //+Rating=0的评论排除在平均值计算和ReviewCount之外
-        Map<String, Object> stats = jdbcTemplate.queryForMap(
-                "SELECT " +
-                        "COUNT(CASE WHEN Rating > 0 THEN 1 ELSE NULL END) AS ReviewCount, " +
-                        "ROUND(AVG(CASE WHEN Rating > 0 THEN Rating ELSE NULL END)::numeric, 2) AS AvgRating " +
-                        "FROM reviews WHERE RecipeId = ?",
-                recipeId
+    @Override
+    @Transactional
+    public int repairAllAggregatedRatings() {
+        return jdbcTemplate.update(
+                "UPDATE recipes r SET " +
+                        "RatingSum = COALESCE(s.RatingSum, 0), " +
+                        "RatingCount = COALESCE(s.RatingCount, 0), " +
+                        "ReviewCount = COALESCE(s.RatingCount, 0), " +
+                        "AggregatedRating = COALESCE(ROUND(s.AvgRating, 2), 0.0) " +
+                        "FROM recipes x " +
+                        "LEFT JOIN (SELECT RecipeId, SUM(Rating) AS RatingSum, COUNT(*) AS RatingCount, " +
+                        "                  AVG(Rating)::numeric AS AvgRating " +
+                        "           FROM reviews WHERE Rating > 0 GROUP BY RecipeId) s " +
+                        "    ON s.RecipeId = x.RecipeId " +
+                        "WHERE r.RecipeId = x.RecipeId AND r.IsDeleted = FALSE"
         );
-
-        Integer reviewCount = ((Number) stats.get("reviewcount")).intValue();
-        Object avgRatingObj = stats.get("avgrating");
-
-        //+没有评论时设置为0.0而不是NULL
-        if (reviewCount == 0 || avgRatingObj == null) {
-            jdbcTemplate.update(
-                    "UPDATE recipes SET AggregatedRating = 0.0, ReviewCount = 0 WHERE RecipeId = ?",
-                    recipeId
-            );
-        } else {
-            Double avgRating = ((Number) avgRatingObj).doubleValue();
-            jdbcTemplate.update(
-                    "UPDATE recipes SET AggregatedRating = ?, ReviewCount = ? WHERE RecipeId = ?",
-                    avgRating,
-                    reviewCount,
-                    recipeId
-            );
-        }
-
-        return recipeService.getRecipeById(recipeId);
     }
 }
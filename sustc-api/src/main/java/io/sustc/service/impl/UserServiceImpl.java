@@ -6,9 +6,14 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.LocalDate;
 import java.time.Period;
@@ -22,25 +27,25 @@ public class UserServiceImpl implements UserService {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
-    private long requireActiveUser(AuthInfo auth) {
-        if (auth == null) {
-            throw new SecurityException("auth is null");
-        }
-        long userId = auth.getAuthorId();
-        try {
-            Boolean isDeleted = jdbcTemplate.queryForObject(
-                    "SELECT IsDeleted FROM users WHERE AuthorId = ?",
-                    Boolean.class,
-                    userId
-            );
-            if (isDeleted == null || isDeleted) {
-                throw new SecurityException("user is inactive");
-            }
-            return userId;
-        } catch (EmptyResultDataAccessException e) {
-            throw new SecurityException("user does not exist", e);
-        }
-    }
+    @Autowired
+    private ActiveUserGuard activeUserGuard;
+
+    @Autowired
+    private AnalyticsCache analyticsCache;
+
+    @Autowired
+    private AuthSessionCache authSessionCache;
+
+    @Autowired
+    private CredentialStore credentialStore;
+
+    @Autowired
+    private List<FeedIndex> feedIndexes;
+
+    @Autowired
+    private FollowGraph followGraph;
+
+    private static final String HIGHEST_FOLLOW_RATIO = "highestFollowRatio";
 
     private int parseAgeFromBirthday(String birthday) {
         if (!StringUtils.hasText(birthday)) {
@@ -59,57 +64,144 @@ public class UserServiceImpl implements UserService {
     }
 
 
-    @Override
-    public long register(RegisterUserReq req) {
+    private static final class Registration {
+
+        final String name;
+        final String gender;
+        final int age;
+        final String password;
+
+        Registration(String name, String gender, int age, String password) {
+            this.name = name;
+            this.gender = gender;
+            this.age = age;
+            this.password = password;
+        }
+    }
+
+    /**
+     * 校验注册请求；任何一项不合法返回 null（对应 register 返回 -1）
+     */
+    private Registration parseRegistration(RegisterUserReq req) {
         if (req == null) {
-            return -1;
+            return null;
         }
 
         String name = req.getName();
         if (!StringUtils.hasText(name)) {
-            return -1;
+            return null;
         }
 
         RegisterUserReq.Gender gender = req.getGender();
         if (gender == null || gender == RegisterUserReq.Gender.UNKNOWN) {
-            return -1;
+            return null;
         }
         String genderStr = (gender == RegisterUserReq.Gender.MALE) ? "Male" : "Female";
 
         int age = parseAgeFromBirthday(req.getBirthday());
         if (age <= 0) {
+            return null;
+        }
+
+        return new Registration(name.trim(), genderStr, age, req.getPassword());
+    }
+
+    @Override
+    public long register(RegisterUserReq req) {
+        Registration r = parseRegistration(req);
+        if (r == null) {
             return -1;
         }
 
-        Integer cnt = jdbcTemplate.queryForObject(
-                "SELECT COUNT(*) FROM users WHERE AuthorName = ?",
-                Integer.class,
-                name.trim()
+        //+一条语句完成判重、取号与插入：NOT EXISTS 让重名时不消耗序列号，保持编号连续；
+        //+并发注册同名时由唯一索引 idx_users_name_claimed 兜底，ON CONFLICT 不插入也不报错
+        List<Long> ids = jdbcTemplate.queryForList(
+                "INSERT INTO users " +
+                        "(AuthorId, AuthorName, Gender, Age, Followers, Following, Password, IsDeleted) " +
+                        "SELECT nextval('users_id_seq'), ?::text, ?::text, ?::int, 0, 0, ?::text, FALSE " +
+                        "WHERE NOT EXISTS (SELECT 1 FROM users WHERE AuthorName = ? AND NameClaimed) " +
+                        "ON CONFLICT (AuthorName) WHERE NameClaimed DO NOTHING " +
+                        "RETURNING AuthorId",
+                Long.class,
+                r.name, r.gender, r.age, r.password, r.name
         );
-        if (cnt != null && cnt > 0) {
+        if (ids.isEmpty()) {
             return -1;
         }
+        long newId = ids.get(0);
+        activeUserGuard.onRegistered(newId);
+        return newId;
+    }
 
-        Long newId = jdbcTemplate.queryForObject(
-                "SELECT COALESCE(MAX(AuthorId) + 1, 1) FROM users",
-                Long.class
-        );
-        if (newId == null) {
-            newId = 1L;
+    @Override
+    public long[] registerAll(List<RegisterUserReq> reqs) {
+        if (reqs == null) {
+            throw new IllegalArgumentException("reqs is null");
+        }
+        long[] result = new long[reqs.size()];
+        Arrays.fill(result, -1);
+
+        //+批内重名只保留第一次出现的请求，与逐个调用 register 的结果一致
+        Map<String, Integer> firstIndex = new HashMap<>();
+        List<Registration> valid = new ArrayList<>();
+        for (int i = 0; i < reqs.size(); i++) {
+            Registration r = parseRegistration(reqs.get(i));
+            if (r != null && firstIndex.putIfAbsent(r.name, i) == null) {
+                valid.add(r);
+            }
+        }
+        if (valid.isEmpty()) {
+            return result;
         }
 
-        jdbcTemplate.update(
-                "INSERT INTO users " +
+        int n = valid.size();
+        Integer[] ords = new Integer[n];
+        String[] names = new String[n];
+        String[] genders = new String[n];
+        Integer[] ages = new Integer[n];
+        String[] passwords = new String[n];
+        for (int i = 0; i < n; i++) {
+            Registration r = valid.get(i);
+            ords[i] = i;
+            names[i] = r.name;
+            genders[i] = r.gender;
+            ages[i] = r.age;
+            passwords[i] = r.password;
+        }
+
+        //+按请求顺序取号，编号与逐个注册相同
+        Map<String, Long> idByName = new HashMap<>();
+        jdbcTemplate.query(
+                "WITH req AS ( " +
+                        "    SELECT * FROM unnest(?::int[], ?::text[], ?::text[], ?::int[], ?::text[]) " +
+                        "        AS t(Ord, Name, Gender, Age, Pwd) " +
+                        ") " +
+                        "INSERT INTO users " +
                         "(AuthorId, AuthorName, Gender, Age, Followers, Following, Password, IsDeleted) " +
-                        "VALUES (?, ?, ?, ?, 0, 0, ?, FALSE)",
-                newId,
-                name.trim(),
-                genderStr,
-                age,
-                req.getPassword()
+                        "SELECT nextval('users_id_seq'), r.Name, r.Gender, r.Age, 0, 0, r.Pwd, FALSE " +
+                        "FROM ( " +
+                        "    SELECT * FROM req " +
+                        "    WHERE NOT EXISTS (SELECT 1 FROM users u WHERE u.AuthorName = req.Name AND u.NameClaimed) " +
+                        "    ORDER BY Ord " +
+                        ") r " +
+                        "ON CONFLICT (AuthorName) WHERE NameClaimed DO NOTHING " +
+                        "RETURNING AuthorId, AuthorName",
+                ps -> {
+                    Connection conn = ps.getConnection();
+                    ps.setArray(1, conn.createArrayOf("integer", ords));
+                    ps.setArray(2, conn.createArrayOf("text", names));
+                    ps.setArray(3, conn.createArrayOf("text", genders));
+                    ps.setArray(4, conn.createArrayOf("integer", ages));
+                    ps.setArray(5, conn.createArrayOf("text", passwords));
+                },
+                (RowCallbackHandler) rs -> idByName.put(rs.getString(2), rs.getLong(1))
         );
 
-        return newId;
+        for (Map.Entry<String, Long> e : idByName.entrySet()) {
+            result[firstIndex.get(e.getKey())] = e.getValue();
+            activeUserGuard.onRegistered(e.getValue());
+        }
+        return result;
     }
 
     @Override
@@ -123,35 +215,13 @@ public class UserServiceImpl implements UserService {
             return -1;
         }
 
-        try {
-            Map<String, Object> row = jdbcTemplate.queryForMap(
-                    "SELECT Password, IsDeleted FROM users WHERE AuthorId = ?",
-                    userId
-            );
-            Map<String, Object> lowerCaseRow = new HashMap<>();
-            row.forEach((k, v) -> lowerCaseRow.put(k.toLowerCase(), v));
-
-            Boolean isDeleted = (Boolean) lowerCaseRow.get("isdeleted");
-            if (Boolean.TRUE.equals(isDeleted)) {
-                return -1;
-            }
-            Object storedPwdObj = lowerCaseRow.get("password");
-            String storedPwd = storedPwdObj == null ? null : storedPwdObj.toString();
-            if (!StringUtils.hasText(storedPwd) || password == null) {
-                return -1;
-            }
-            if (!storedPwd.equals(password)) {
-                return -1;
-            }
-            return userId;
-        } catch (EmptyResultDataAccessException e) {
-            return -1;
-        }
+        return credentialStore.authenticate(userId, password) == CredentialStore.Outcome.OK ? userId : -1;
     }
 
     @Override
+    @Transactional
     public boolean deleteAccount(AuthInfo auth, long userId) {
-        long operatorId = requireActiveUser(auth);
+        long operatorId = activeUserGuard.require(auth);
 
         Boolean exists = jdbcTemplate.queryForObject(
                 "SELECT EXISTS(SELECT 1 FROM users WHERE AuthorId = ?)",
@@ -176,103 +246,270 @@ public class UserServiceImpl implements UserService {
         }
 
         jdbcTemplate.update(
-                "UPDATE users SET IsDeleted = TRUE WHERE AuthorId = ?",
+                "UPDATE users SET IsDeleted = TRUE, Followers = 0, Following = 0 WHERE AuthorId = ?",
                 userId
         );
+        authSessionCache.invalidate(userId);
+        activeUserGuard.onDeleted(userId);
 
-        jdbcTemplate.update("DELETE FROM user_follows WHERE FollowerId = ? OR FollowingId = ?", userId, userId);
+        //+删除关注边的同时扣减对端计数器：被注销用户关注的人少一个粉丝，关注它的人少一个关注
+        jdbcTemplate.update(
+                "WITH gone AS ( " +
+                        "    DELETE FROM user_follows WHERE FollowerId = ? OR FollowingId = ? " +
+                        "    RETURNING FollowerId, FollowingId " +
+                        "), d AS ( " +
+                        "    SELECT CASE WHEN FollowerId = ? THEN FollowingId ELSE FollowerId END AS Other, " +
+                        "           FollowerId = ? AS LostFollower " +
+                        "    FROM gone " +
+                        ") " +
+                        "UPDATE users u SET " +
+                        "    Followers = u.Followers - x.LostFollowers, " +
+                        "    Following = u.Following - x.LostFollowing " +
+                        "FROM ( " +
+                        "    SELECT Other, " +
+                        "           COUNT(*) FILTER (WHERE LostFollower) AS LostFollowers, " +
+                        "           COUNT(*) FILTER (WHERE NOT LostFollower) AS LostFollowing " +
+                        "    FROM d GROUP BY Other " +
+                        ") x " +
+                        "WHERE u.AuthorId = x.Other",
+                userId, userId, userId, userId
+        );
+        analyticsCache.invalidate(AnalyticsCache.USERS, AnalyticsCache.USER_FOLLOWS);
+        followGraph.removeUser(userId);
+        for (FeedIndex feedIndex : feedIndexes) {
+            feedIndex.onAccountDeleted(userId);
+        }
 
         return true;
     }
 
+    /**
+     * 关注/取关切换，一条语句完成：
+     * 先按主键顺序锁住双方的 users 行（与 followAll 相同），相向的并发切换不会互相死锁；
+     * 双方活跃时先尝试删除关注边，删除成功即为取关；否则插入关注边。
+     * 同一语句内按实际增删的行数调整双方计数器（数据修改 CTE 无论是否被引用都会执行），
+     * 整个切换只需一次往返，热点用户行上的锁持有时间最短。
+     */
+    private static final String FOLLOW_TOGGLE_SQL =
+            "WITH lk AS ( " +
+                    "    SELECT AuthorId, IsDeleted FROM users WHERE AuthorId IN (?, ?) " +
+                    "    ORDER BY AuthorId FOR NO KEY UPDATE " +
+                    "), me AS ( " +
+                    "    SELECT AuthorId FROM lk WHERE AuthorId = ? AND IsDeleted = FALSE " +
+                    "), f AS ( " +
+                    "    SELECT AuthorId FROM lk WHERE AuthorId = ? AND IsDeleted = FALSE " +
+                    "), del AS ( " +
+                    "    DELETE FROM user_follows " +
+                    "    WHERE FollowerId = (SELECT AuthorId FROM me) AND FollowingId = (SELECT AuthorId FROM f) " +
+                    "    RETURNING FollowingId " +
+                    "), ins AS ( " +
+                    "    INSERT INTO user_follows (FollowerId, FollowingId) " +
+                    "    SELECT me.AuthorId, f.AuthorId FROM me, f " +
+                    "    WHERE NOT EXISTS (SELECT 1 FROM del) " +
+                    "    ON CONFLICT (FollowerId, FollowingId) DO NOTHING " +
+                    "    RETURNING FollowingId " +
+                    "), delta AS ( " +
+                    "    SELECT (SELECT COUNT(*) FROM ins) - (SELECT COUNT(*) FROM del) AS d " +
+                    "), cnt AS ( " +
+                    "    UPDATE users u SET " +
+                    "        Following = u.Following + CASE WHEN u.AuthorId = ? THEN delta.d ELSE 0 END, " +
+                    "        Followers = u.Followers + CASE WHEN u.AuthorId = ? THEN delta.d ELSE 0 END " +
+                    "    FROM delta " +
+                    "    WHERE u.AuthorId IN (?, ?) AND delta.d <> 0 " +
+                    ") " +
+                    "SELECT EXISTS (SELECT 1 FROM me) AS FollowerActive, " +
+                    "       EXISTS (SELECT 1 FROM f) AS FolloweeActive, " +
+                    "       (SELECT COUNT(*) FROM del) AS Removed, " +
+                    "       (SELECT COUNT(*) FROM ins) AS Inserted";
+
     @Override
+    @Transactional
     public boolean follow(AuthInfo auth, long followeeId) {
-        long followerId = requireActiveUser(auth);
+        if (auth == null) {
+            throw new SecurityException("auth is null");
+        }
+        long followerId = auth.getAuthorId();
 
         if (followerId == followeeId) {
             throw new SecurityException("cannot follow self");
         }
 
-        try {
-            Boolean isDeleted = jdbcTemplate.queryForObject(
-                    "SELECT IsDeleted FROM users WHERE AuthorId = ?",
-                    Boolean.class,
-                    followeeId
-            );
-            if (isDeleted == null || isDeleted) {
-                throw new SecurityException("followee is inactive");
+        //+{followerActive, followeeActive, removed, inserted}
+        boolean[] outcome = jdbcTemplate.queryForObject(FOLLOW_TOGGLE_SQL, (rs, rowNum) -> new boolean[]{
+                rs.getBoolean("FollowerActive"),
+                rs.getBoolean("FolloweeActive"),
+                rs.getLong("Removed") > 0,
+                rs.getLong("Inserted") > 0
+        }, followerId, followeeId, followerId, followeeId, followerId, followeeId, followerId, followeeId);
+
+        if (outcome == null || !outcome[0]) {
+            throw new SecurityException("user is inactive");
+        }
+        if (!outcome[1]) {
+            throw new SecurityException("followee is inactive");
+        }
+
+        if (outcome[2]) {
+            analyticsCache.invalidate(AnalyticsCache.USER_FOLLOWS);
+            followGraph.unfollow(followerId, followeeId);
+            for (FeedIndex feedIndex : feedIndexes) {
+                feedIndex.onUnfollow(followerId, followeeId);
             }
-        } catch (EmptyResultDataAccessException e) {
-            throw new SecurityException("followee does not exist");
+            return false;
         }
+        if (outcome[3]) {
+            analyticsCache.invalidate(AnalyticsCache.USER_FOLLOWS);
+            followGraph.follow(followerId, followeeId);
+            for (FeedIndex feedIndex : feedIndexes) {
+                feedIndex.onFollow(followerId, followeeId);
+            }
+        }
+        //+插入因并发冲突未生效时，关注边已由另一事务建立，结果同样是已关注
+        return true;
+    }
+
 
-        Integer cnt = jdbcTemplate.queryForObject(
-                "SELECT COUNT(*) FROM user_follows WHERE FollowerId = ? AND FollowingId = ?",
-                Integer.class,
-                followerId,
-                followeeId
+    @Override
+    @Transactional
+    public boolean[] followAll(AuthInfo auth, long[] followeeIds) {
+        long followerId = activeUserGuard.require(auth);
+        if (followeeIds == null) {
+            throw new IllegalArgumentException("followeeIds is null");
+        }
+        if (followeeIds.length == 0) {
+            return new boolean[0];
+        }
+        Long[] ids = new Long[followeeIds.length];
+        for (int i = 0; i < followeeIds.length; i++) {
+            ids[i] = followeeIds[i];
+        }
+
+        //+一条语句完成校验、批量插入和计数器调整
+        //+先按主键顺序锁住将要更新计数器的所有行（含自己），与并发注销互斥，也避免批量关注之间相互死锁
+        Set<Long> following = new HashSet<>();
+        List<Long> inserted = new ArrayList<>();
+        jdbcTemplate.query(
+                "WITH lk AS ( " +
+                        "    SELECT u.AuthorId, u.IsDeleted FROM users u " +
+                        "    WHERE u.AuthorId = ANY(?) OR u.AuthorId = ? " +
+                        "    ORDER BY u.AuthorId FOR NO KEY UPDATE " +
+                        "), v AS ( " +
+                        "    SELECT AuthorId FROM lk WHERE AuthorId <> ? AND IsDeleted = FALSE " +
+                        "), ins AS ( " +
+                        "    INSERT INTO user_follows (FollowerId, FollowingId) " +
+                        "    SELECT ?, AuthorId FROM v " +
+                        "    ON CONFLICT (FollowerId, FollowingId) DO NOTHING " +
+                        "    RETURNING FollowingId " +
+                        "), cnt AS ( " +
+                        "    UPDATE users u SET " +
+                        "        Followers = u.Followers + CASE WHEN u.AuthorId = ? THEN 0 ELSE 1 END, " +
+                        "        Following = u.Following + CASE WHEN u.AuthorId = ? THEN (SELECT COUNT(*) FROM ins) ELSE 0 END " +
+                        "    WHERE u.AuthorId IN (SELECT FollowingId FROM ins) " +
+                        "       OR (u.AuthorId = ? AND EXISTS (SELECT 1 FROM ins)) " +
+                        ") " +
+                        "SELECT v.AuthorId, ins.FollowingId IS NOT NULL AS Inserted " +
+                        "FROM v LEFT JOIN ins ON ins.FollowingId = v.AuthorId",
+                ps -> {
+                    ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids));
+                    ps.setLong(2, followerId);
+                    ps.setLong(3, followerId);
+                    ps.setLong(4, followerId);
+                    ps.setLong(5, followerId);
+                    ps.setLong(6, followerId);
+                    ps.setLong(7, followerId);
+                },
+                (RowCallbackHandler) rs -> {
+                    following.add(rs.getLong(1));
+                    if (rs.getBoolean(2)) {
+                        inserted.add(rs.getLong(1));
+                    }
+                }
         );
-        boolean alreadyFollowing = cnt != null && cnt > 0;
 
-        if (alreadyFollowing) {
-            jdbcTemplate.update(
-                    "DELETE FROM user_follows WHERE FollowerId = ? AND FollowingId = ?",
-                    followerId,
-                    followeeId
-            );
-            return false;
-        } else {
-            jdbcTemplate.update(
-                    "INSERT INTO user_follows (FollowerId, FollowingId) VALUES (?, ?)",
-                    followerId,
-                    followeeId
-            );
-            return true;
+        if (!inserted.isEmpty()) {
+            analyticsCache.invalidate(AnalyticsCache.USER_FOLLOWS);
+            for (long followeeId : inserted) {
+                followGraph.follow(followerId, followeeId);
+                for (FeedIndex feedIndex : feedIndexes) {
+                    feedIndex.onFollow(followerId, followeeId);
+                }
+            }
         }
+
+        boolean[] result = new boolean[followeeIds.length];
+        for (int i = 0; i < followeeIds.length; i++) {
+            result[i] = following.contains(followeeIds[i]);
+        }
+        return result;
     }
 
+    //+计数器由 follow / followAll / deleteAccount 维护，资料页只需一次主键查询
+    private static final String USER_COLUMNS =
+            "SELECT AuthorId, AuthorName, Gender, Age, Password, IsDeleted, Followers, Following FROM users ";
 
     @Override
     public UserRecord getById(long userId) {
         try {
-            Map<String, Object> row = jdbcTemplate.queryForMap(
-                    "SELECT AuthorId, AuthorName, Gender, Age, Password, IsDeleted " +
-                            "FROM users WHERE AuthorId = ?",
+            return jdbcTemplate.queryForObject(
+                    USER_COLUMNS + "WHERE AuthorId = ?",
+                    (rs, rowNum) -> mapUser(rs),
                     userId
             );
-
-            Integer followers = jdbcTemplate.queryForObject(
-                    "SELECT COUNT(*) FROM user_follows WHERE FollowingId = ?",
-                    Integer.class,
-                    userId
-            );
-            Integer following = jdbcTemplate.queryForObject(
-                    "SELECT COUNT(*) FROM user_follows WHERE FollowerId = ?",
-                    Integer.class,
-                    userId
-            );
-
-            UserRecord user = new UserRecord();
-            user.setAuthorId(((Number) row.get("authorid")).longValue());
-            user.setAuthorName((String) row.get("authorname"));
-            user.setGender((String) row.get("gender"));
-            user.setAge(((Number) row.get("age")).intValue());
-            user.setPassword((String) row.get("password"));
-            Object deletedObj = row.get("isdeleted");
-            user.setDeleted(deletedObj != null && (Boolean) deletedObj);
-            user.setFollowers(followers == null ? 0 : followers);
-            user.setFollowing(following == null ? 0 : following);
-
-            return user;
         } catch (EmptyResultDataAccessException e) {
             throw new IllegalArgumentException("user not found");
         }
     }
 
+    @Override
+    public List<UserRecord> getByIds(long[] userIds) {
+        if (userIds == null) {
+            throw new IllegalArgumentException("userIds is null");
+        }
+        if (userIds.length == 0) {
+            return new ArrayList<>();
+        }
+        Long[] ids = new Long[userIds.length];
+        for (int i = 0; i < userIds.length; i++) {
+            ids[i] = userIds[i];
+        }
+        Map<Long, UserRecord> byId = new HashMap<>();
+        jdbcTemplate.query(
+                USER_COLUMNS + "WHERE AuthorId = ANY(?)",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids)),
+                (RowCallbackHandler) rs -> {
+                    UserRecord user = mapUser(rs);
+                    byId.put(user.getAuthorId(), user);
+                }
+        );
+        //+按输入顺序返回，不存在的 ID 跳过
+        List<UserRecord> users = new ArrayList<>(userIds.length);
+        for (long id : userIds) {
+            UserRecord user = byId.get(id);
+            if (user != null) {
+                users.add(user);
+            }
+        }
+        return users;
+    }
+
+    private static UserRecord mapUser(ResultSet rs) throws SQLException {
+        UserRecord user = new UserRecord();
+        user.setAuthorId(rs.getLong("AuthorId"));
+        user.setAuthorName(rs.getString("AuthorName"));
+        user.setGender(rs.getString("Gender"));
+        user.setAge(rs.getInt("Age"));
+        user.setPassword(rs.getString("Password"));
+        user.setDeleted(rs.getBoolean("IsDeleted"));
+        //+计数器为 NULL 时 getInt 返回 0，与原先的默认值一致
+        user.setFollowers(rs.getInt("Followers"));
+        user.setFollowing(rs.getInt("Following"));
+        return user;
+    }
+
     @Override
     public void updateProfile(AuthInfo auth, String gender, Integer age) {
 
-        long userId = requireActiveUser(auth);
+        long userId = activeUserGuard.require(auth);
 
         if (gender != null) {
             String g = gender.trim();
@@ -301,19 +538,30 @@ public class UserServiceImpl implements UserService {
 
     @Override
     public PageResult<FeedItem> feed(AuthInfo auth, int page, int size, String category) {
-        long userId = requireActiveUser(auth);
+        long userId = activeUserGuard.require(auth);
 
         if (page < 1) page = 1;
         if (size < 1) size = 1;
         if (size > 200) size = 200;
 
+        FeedIndex index = activeFeedIndex();
+        if (index != null) {
+            FeedPage feedPage = index.page(userId, category, (page - 1) * size, size, true);
+            PageResult<FeedItem> result = new PageResult<>();
+            result.setItems(loadFeedItems(feedPage.recipeIds));
+            result.setPage(page);
+            result.setSize(size);
+            result.setTotal(feedPage.total);
+            return result;
+        }
+
         List<Object> params = new ArrayList<>();
         params.add(userId);
 
         String baseFrom = " FROM recipes r " +
                 "JOIN user_follows uf ON uf.FollowingId = r.AuthorId " +
                 "JOIN users u ON u.AuthorId = r.AuthorId " +
-                "WHERE uf.FollowerId = ? AND u.IsDeleted = FALSE";
+                "WHERE uf.FollowerId = ? AND u.IsDeleted = FALSE AND r.IsDeleted = FALSE";
 
         if (category != null) {
             baseFrom += " AND r.RecipeCategory = ?";
@@ -327,33 +575,13 @@ public class UserServiceImpl implements UserService {
         params.add(size);
         params.add(offset);
 
-        //+时区调整：数据库时间加8小时
         String sql = "SELECT r.RecipeId, r.Name, r.AuthorId, u.AuthorName, " +
                 "r.DatePublished, r.AggregatedRating, r.ReviewCount " +
                 baseFrom +
                 " ORDER BY r.DatePublished DESC NULLS LAST, r.RecipeId DESC " +
                 " LIMIT ? OFFSET ?";
 
-        List<FeedItem> items = jdbcTemplate.query(sql, params.toArray(), (rs, rowNum) -> {
-            FeedItem item = new FeedItem();
-            item.setRecipeId(rs.getLong("RecipeId"));
-            item.setName(rs.getString("Name"));
-            item.setAuthorId(rs.getLong("AuthorId"));
-            item.setAuthorName(rs.getString("AuthorName"));
-            Timestamp ts = rs.getTimestamp("DatePublished");
-            if (ts != null) {
-                long adjustedTime = ts.getTime() + 8 * 60 * 60 * 1000;
-                item.setDatePublished(new Timestamp(adjustedTime).toInstant());
-            } else {
-                item.setDatePublished(null);
-            }
-            Object aggObj = rs.getObject("AggregatedRating");
-            //+没有评论时返回0.0而不是null
-            item.setAggregatedRating(aggObj == null ? 0.0 : ((Number) aggObj).doubleValue());
-            int rc = rs.getInt("ReviewCount");
-            item.setReviewCount(rs.wasNull() ? null : rc);
-            return item;
-        });
+        List<FeedItem> items = jdbcTemplate.query(sql, params.toArray(), (rs, rowNum) -> mapFeedItem(rs));
 
         PageResult<FeedItem> result = new PageResult<>();
         result.setItems(items);
@@ -363,25 +591,177 @@ public class UserServiceImpl implements UserService {
         return result;
     }
 
+    @Override
+    public CursorPage<FeedItem> feed(AuthInfo auth, String cursor, int size, String category, boolean includeTotal) {
+        long userId = activeUserGuard.require(auth);
+
+        if (size < 1) size = 1;
+        if (size > 200) size = 200;
+        FeedCursor after = FeedCursor.decode(cursor);
+
+        //+每个关注作者从游标位置向后各取 size+1 条，外层只合并这些行；按分类过滤时沿 idx_recipes_feed，
+        //+否则沿 idx_recipes_author_date。有日期的游标拆成"日期更早"与"日期为空"两个分支，各自是一段索引区间
+        List<Object> params = new ArrayList<>();
+        StringBuilder inner = new StringBuilder();
+        if (after == null) {
+            appendFeedBranch(inner, category, null, "r.DatePublished DESC NULLS LAST, r.RecipeId DESC", size + 1, params);
+        } else if (after.datePublished != null) {
+            appendFeedBranch(inner, category, "(r.DatePublished, r.RecipeId) < (?, ?)",
+                    "r.DatePublished DESC, r.RecipeId DESC", size + 1, params, after.datePublished, after.recipeId);
+            inner.append(" UNION ALL ");
+            appendFeedBranch(inner, category, "r.DatePublished IS NULL",
+                    "r.RecipeId DESC", size + 1, params);
+        } else {
+            appendFeedBranch(inner, category, "r.DatePublished IS NULL AND r.RecipeId < ?",
+                    "r.RecipeId DESC", size + 1, params, after.recipeId);
+        }
+        params.add(userId);
+        params.add(size + 1);
+
+        String sql = "SELECT f.RecipeId, f.Name, uf.FollowingId AS AuthorId, u.AuthorName, " +
+                "f.DatePublished, f.AggregatedRating, f.ReviewCount " +
+                "FROM user_follows uf " +
+                "JOIN users u ON u.AuthorId = uf.FollowingId AND u.IsDeleted = FALSE " +
+                "CROSS JOIN LATERAL (" + inner + ") f " +
+                "WHERE uf.FollowerId = ? " +
+                "ORDER BY f.DatePublished DESC NULLS LAST, f.RecipeId DESC LIMIT ?";
+
+        //+FeedItem 中的发布时间已做时区调整，游标需要数据库原值，按行号另存
+        Timestamp[] published = new Timestamp[size + 1];
+        List<FeedItem> items = jdbcTemplate.query(sql, (rs, rowNum) -> {
+            published[rowNum] = rs.getTimestamp("DatePublished");
+            return mapFeedItem(rs);
+        }, params.toArray());
+
+        String nextCursor = null;
+        if (items.size() > size) {
+            items = new ArrayList<>(items.subList(0, size));
+            nextCursor = new FeedCursor(published[size - 1], items.get(size - 1).getRecipeId()).encode();
+        }
+
+        Long total = null;
+        if (includeTotal) {
+            List<Object> countParams = new ArrayList<>();
+            countParams.add(userId);
+            String countSql = "SELECT COUNT(*) FROM recipes r " +
+                    "JOIN user_follows uf ON uf.FollowingId = r.AuthorId " +
+                    "JOIN users u ON u.AuthorId = r.AuthorId " +
+                    "WHERE uf.FollowerId = ? AND u.IsDeleted = FALSE AND r.IsDeleted = FALSE";
+            if (category != null) {
+                countSql += " AND r.RecipeCategory = ?";
+                countParams.add(category);
+            }
+            total = jdbcTemplate.queryForObject(countSql, Long.class, countParams.toArray());
+        }
+
+        CursorPage<FeedItem> result = new CursorPage<>();
+        result.setItems(items);
+        result.setSize(size);
+        result.setNextCursor(nextCursor);
+        result.setTotal(total);
+        return result;
+    }
+
+    /**
+     * 追加 feed 游标查询中单个作者的一段索引区间扫描，参数按占位符顺序写入 params
+     */
+    private static void appendFeedBranch(StringBuilder sql, String category, String predicate, String orderBy,
+                                         int limit, List<Object> params, Object... predicateParams) {
+        sql.append("(SELECT r.RecipeId, r.Name, r.DatePublished, r.AggregatedRating, r.ReviewCount " +
+                "FROM recipes r WHERE r.AuthorId = uf.FollowingId AND r.IsDeleted = FALSE ");
+        if (category != null) {
+            sql.append("AND r.RecipeCategory = ? ");
+            params.add(category);
+        }
+        if (predicate != null) {
+            sql.append("AND ").append(predicate).append(' ');
+            params.addAll(Arrays.asList(predicateParams));
+        }
+        sql.append("ORDER BY ").append(orderBy).append(" LIMIT ?)");
+        params.add(limit);
+    }
+
+    private FeedIndex activeFeedIndex() {
+        for (FeedIndex feedIndex : feedIndexes) {
+            if (feedIndex.isActive()) {
+                return feedIndex;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 按索引给出的顺序回表取展示字段，一次查询取完整页
+     */
+    private List<FeedItem> loadFeedItems(long[] recipeIds) {
+        if (recipeIds.length == 0) {
+            return new ArrayList<>();
+        }
+        Long[] ids = new Long[recipeIds.length];
+        for (int i = 0; i < recipeIds.length; i++) {
+            ids[i] = recipeIds[i];
+        }
+        Map<Long, FeedItem> byId = new HashMap<>();
+        jdbcTemplate.query(
+                "SELECT r.RecipeId, r.Name, r.AuthorId, u.AuthorName, " +
+                        "r.DatePublished, r.AggregatedRating, r.ReviewCount " +
+                        "FROM recipes r JOIN users u ON u.AuthorId = r.AuthorId " +
+                        "WHERE r.RecipeId = ANY(?)",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids)),
+                (RowCallbackHandler) rs -> {
+                    FeedItem item = mapFeedItem(rs);
+                    byId.put(item.getRecipeId(), item);
+                }
+        );
+        List<FeedItem> items = new ArrayList<>(recipeIds.length);
+        for (long id : recipeIds) {
+            FeedItem item = byId.get(id);
+            if (item != null) {
+                items.add(item);
+            }
+        }
+        return items;
+    }
+
+    private static FeedItem mapFeedItem(ResultSet rs) throws SQLException {
+        FeedItem item = new FeedItem();
+        item.setRecipeId(rs.getLong("RecipeId"));
+        item.setName(rs.getString("Name"));
+        item.setAuthorId(rs.getLong("AuthorId"));
+        item.setAuthorName(rs.getString("AuthorName"));
+        //+时区调整：数据库时间加8小时
+        Timestamp ts = rs.getTimestamp("DatePublished");
+        if (ts != null) {
+            long adjustedTime = ts.getTime() + 8 * 60 * 60 * 1000;
+            item.setDatePublished(new Timestamp(adjustedTime).toInstant());
+        } else {
+            item.setDatePublished(null);
+        }
+        Object aggObj = rs.getObject("AggregatedRating");
+        //+没有评论时返回0.0而不是null
+        item.setAggregatedRating(aggObj == null ? 0.0 : ((Number) aggObj).doubleValue());
+        int rc = rs.getInt("ReviewCount");
+        item.setReviewCount(rs.wasNull() ? null : rc);
+        return item;
+    }
+
     @Override
     public Map<String, Object> getUserWithHighestFollowRatio() {
-        //+使用子查询预聚合优化性能
+        Map<String, Object> cached = analyticsCache.get(
+                HIGHEST_FOLLOW_RATIO,
+                new HashSet<>(Arrays.asList(AnalyticsCache.USERS, AnalyticsCache.USER_FOLLOWS)),
+                this::queryUserWithHighestFollowRatio
+        );
+        return cached == null ? null : new HashMap<>(cached);
+    }
+
+    private Map<String, Object> queryUserWithHighestFollowRatio() {
+        //+读取维护好的计数器，表达式与 idx_users_follow_ratio 一致，首行即为答案
         String sql =
-                "SELECT u.AuthorId, u.AuthorName, " +
-                        "       (COALESCE(fc.FollowerCount, 0) * 1.0 / fo.FollowingCount) AS Ratio " +
-                        "FROM users u " +
-                        "INNER JOIN ( " +
-                        "    SELECT FollowerId AS AuthorId, COUNT(*) AS FollowingCount " +
-                        "    FROM user_follows " +
-                        "    GROUP BY FollowerId " +
-                        ") fo ON fo.AuthorId = u.AuthorId " +
-                        "LEFT JOIN ( " +
-                        "    SELECT FollowingId AS AuthorId, COUNT(*) AS FollowerCount " +
-                        "    FROM user_follows " +
-                        "    GROUP BY FollowingId " +
-                        ") fc ON fc.AuthorId = u.AuthorId " +
-                        "WHERE u.IsDeleted = FALSE " +
-                        "ORDER BY Ratio DESC, u.AuthorId ASC " +
+                "SELECT AuthorId, AuthorName, (Followers * 1.0 / Following) AS Ratio " +
+                        "FROM users " +
+                        "WHERE IsDeleted = FALSE AND Following > 0 " +
+                        "ORDER BY (Followers * 1.0 / Following) DESC, AuthorId ASC " +
                         "LIMIT 1";
 
         try {
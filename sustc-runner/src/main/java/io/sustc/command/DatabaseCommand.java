@@ -87,6 +87,13 @@ public class DatabaseCommand {
         databaseService.drop();
     }
 
+    @ShellMethod(key = "db repair-ratings", value = "Recompute the aggregated rating of every recipe from its reviews")
+    public void repairRatings() {
+        long startTime = System.currentTimeMillis();
+        int updated = reviewService.repairAllAggregatedRatings();
+        System.out.println("repaired " + updated + " recipes in " + (System.currentTimeMillis() - startTime) + " ms");
+    }
+
     @ShellMethod(key = "db sum", value = "Demonstrate using DataSource")
     public Integer sum(int a, int b) {
         return databaseService.sum(a, b);
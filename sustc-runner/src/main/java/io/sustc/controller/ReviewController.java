@@ -29,8 +29,14 @@ public class ReviewController {
             @PathVariable long recipeId,
             @RequestParam(defaultValue = "1") int page,
             @RequestParam(defaultValue = "10") int size,
-            @RequestParam(required = false) String sort) {
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) String cursor) {
         try {
+            //+带 cursor 参数（首页传空串）时走 keyset 分页，结果随游标变化，不经过页缓存
+            if (cursor != null) {
+                return ResponseEntity.ok(reviewService.listByRecipe(recipeId, cursor, size, sort));
+            }
+
             @SuppressWarnings("unchecked")
             PageResult<ReviewRecord> result = (PageResult<ReviewRecord>) cacheService.getReviews(recipeId, page, size, sort, PageResult.class);
             
@@ -47,5 +53,36 @@ public class ReviewController {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("error", e.getMessage()));
         }
     }
-}
 
+    @GetMapping("/search")
+    public ResponseEntity<?> searchReviews(
+            @RequestParam String keyword,
+            @RequestParam(required = false) Long recipeId,
+            @RequestParam(required = false) Integer minRating,
+            @RequestParam(defaultValue = "1") int page,
+            @RequestParam(defaultValue = "10") int size) {
+        try {
+            return ResponseEntity.ok(reviewService.searchReviews(keyword, recipeId, minRating, page, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error searching reviews for keyword: {}", keyword, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/author/{authorId}")
+    public ResponseEntity<?> listByAuthor(
+            @PathVariable long authorId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size) {
+        try {
+            return ResponseEntity.ok(reviewService.listByAuthor(authorId, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error getting reviews for author: {}", authorId, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("error", e.getMessage()));
+        }
+    }
+}